@@ -16,22 +16,25 @@ public abstract class Agent extends SimulationObject {
 
 
     boolean inBetweenNodes = false;
+    int departureTime;
+    int arrivalTime;
     boolean transporting = false;
     Parcel currentParcel = null;
-    List<Point> currentPath = null;
+    Path currentPath = null;
+    private List<Reservation> reservations = new ArrayList<>();  // the reservations made by this agent, in order of time
     Point nextPosition = null;
     Point currentDestination = null;
 
-    int batteryLevelFull = Main.batteryCapacity;
-    int batteryLevel = this.batteryLevelFull;
+    int batteryLevelFull;
+    int batteryLevel;
     boolean wantsToCharge = false;
     BatteryStation currentBatteryStation = null;
 
     class ParcelPath {
         private Parcel parcel;
-        private List<Point> path;
+        private Path path;
         private int deliveryTime;
-        private ParcelPath(Parcel parcel, List<Point> path, int deliveryTime) {
+        private ParcelPath(Parcel parcel, Path path, int deliveryTime) {
             this.parcel = parcel;
             this.path = path;
             this.deliveryTime = deliveryTime;
@@ -47,27 +50,94 @@ public abstract class Agent extends SimulationObject {
         return this.startPosition;
     }
 
+    @Override
+    public void setPosition(Point position) {
+        Point previous = this.position;
+        super.setPosition(position);
+        if (this.simulation != null) {
+            this.simulation.objectMoved(this, previous);
+            this.wakeBatteryStationAt(previous);
+            this.wakeBatteryStationAt(position);
+        }
+    }
+
+    // lets the battery station at the given point (if any) notice that its user arrived or left
+    private void wakeBatteryStationAt(Point point) {
+        BatteryStation station = this.simulation.getBatteryStationAt(point);
+        if (station != null) {
+            this.simulation.wake(station);
+        }
+    }
+
+    /**
+     * Returns the current position. While moving between two nodes, the agent logically stays on the node it left
+     * and its pixel position is interpolated from the time that passed since it departed.
+     */
+    @Override
+    public Point getPosition() {
+        if (!this.inBetweenNodes) {
+            return this.position;
+        }
+
+        int moves = this.simulation.getPassedTime() - this.departureTime;
+        if (!this.simulation.hasTicked(this)) {
+            moves -= 1;
+        }
+        return this.getPositionAfter(moves);
+    }
+
+    // the pixel position after moving the given number of ticks towards the next position, one pixel per tick
+    private Point getPositionAfter(int moves) {
+        int dx = this.nextPosition.getX() - this.position.getX();
+        int dy = this.nextPosition.getY() - this.position.getY();
+        dx = (int) Math.signum((double) dx) * Math.max(0, Math.min(Math.abs(dx), moves));
+        dy = (int) Math.signum((double) dy) * Math.max(0, Math.min(Math.abs(dy), moves));
+        return new Point(this.position.getX() + dx, this.position.getY() + dy);
+    }
+
     @Override
     public void init(Simulation simulation, Graph graph) {
         this.simulation = simulation;
         this.graph = graph;
+        this.batteryLevelFull = simulation.getSettings().batteryCapacity;
+        this.batteryLevel = this.batteryLevelFull;
 
         this.simulation.getNodeAt(this.position).setBlocked(true);
     }
 
     private static int delayTime = 10;
-    private int delay = 0;
+    private int nextDecisionTime = 0;
+
+    // changes published on the change bus since they were last looked at, see shouldReplan
+    private int changes = ChangeBus.ALL;
+    private int decisionsWithoutReplan = 0;
+    private boolean stationSearchFailed = false;
+    private boolean parcelSearchBlocked = false;  // a parcel was only out of reach because of reservations
+    int planRequestTime = -1;  // when the agent asked the planning scheduler for a search, -1 if it is not waiting
+    private int plannedTime = -1;  // when the planning scheduler last let the agent search
+
+    // searches again after this many decisions even if nothing relevant changed, as reservations of the nodes
+    // (which are not published) may have opened up a path in the meantime
+    private static final int REPLAN_DECISIONS = 10;
+
+    /**
+     * Returns the number of ticks from one decision of an agent to the next.
+     */
+    public static int getDecisionInterval() {
+        return delayTime + 1;
+    }
 
     @Override
     public void tick() {
+        int time = this.simulation.getPassedTime();
+
         if (this.inBetweenNodes) {
-            this.delay = 0;
+            this.nextDecisionTime = time + 1;
             this.move();
         } else if (batteryLevel > 0) {
-            if (this.delay > 0) {
-                this.delay -= 1;
-            } else {
-                this.delay = delayTime;
+            if (time >= this.nextDecisionTime) {
+                this.nextDecisionTime = time + delayTime + 1;
+                this.decisionsWithoutReplan += 1;
 
                 if (this.wantsToCharge) {
                     this.goChargeBattery();
@@ -75,19 +145,123 @@ public abstract class Agent extends SimulationObject {
                     if (this.transporting) {
                         this.deliverParcel();
                     } else {
-                        this.searchParcel();
+                        if (this.wantsToSearch(ChangeBus.PARCEL_ARRIVED | ChangeBus.PARCEL_FREED)) {
+                            this.searchParcel();
+                        }
                         this.pickUpParcel();
                     }
-                } else {
+                } else if (this.wantsToSearch(ChangeBus.PARCEL_ARRIVED | ChangeBus.PARCEL_FREED
+                        | ChangeBus.PARCEL_TAKEN | ChangeBus.BATTERY_LOW | ChangeBus.MOVED)) {
                     this.searchParcel();
                 }
 
+                if ((this.changes & ChangeBus.PATH_CONFLICT) != 0) {
+                    this.changes &= ~ChangeBus.PATH_CONFLICT;
+                    if (this.isPathBlocked()) {
+                        this.reroutePath();
+                    }
+                }
+
                 this.updateBatteryManagement();
                 this.updatePathMovement();
             }
         }
     }
 
+    @Override
+    public int getNextTickTime(int time) {
+        if (this.inBetweenNodes) {
+            // leaves its node on the first tick of the move, and only has to tick again on arrival
+            return time <= this.departureTime ? this.departureTime + 1 : this.arrivalTime;
+        }
+        if (this.batteryLevel <= 0) {
+            // woken up by the battery station when charged
+            return -1;
+        }
+        return Math.max(time + 1, this.nextDecisionTime);
+    }
+
+    /**
+     * Called by the change bus when something happened that may be relevant for the plans of this agent.
+     */
+    public void notifyChange(int change) {
+        this.changes |= change;
+    }
+
+    /**
+     * Returns whether one of the given changes happened since the last replan, or whether the agent has not
+     * replanned for too long, and if so consumes the changes.
+     */
+    private boolean shouldReplan(int relevant) {
+        if ((this.changes & relevant) == 0 && !this.parcelSearchBlocked && this.decisionsWithoutReplan < REPLAN_DECISIONS) {
+            return false;
+        }
+        this.changes &= ~relevant;
+        this.decisionsWithoutReplan = 0;
+        return true;
+    }
+
+    /**
+     * Returns whether the agent should search for a parcel right now. With a planning scheduler the search is
+     * requested instead, and done at the start of a later tick (see plan).
+     */
+    private boolean wantsToSearch(int relevant) {
+        if (this.plannedTime == this.simulation.getPassedTime()) {
+            // already searched at the start of this tick
+            return false;
+        }
+        if (!this.shouldReplan(relevant)) {
+            return false;
+        }
+
+        PlanningScheduler scheduler = this.simulation.getPlanningScheduler();
+        if (scheduler != null && this.simulation.getDispatcher() == null) {
+            scheduler.request(this);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Searches for a parcel when the planning scheduler gives the agent its turn, and acts on a new plan right away.
+     */
+    public void plan() {
+        if (this.inBetweenNodes || this.wantsToCharge || this.transporting || this.batteryLevel <= 0) {
+            // its plans changed while waiting, it asks again at a later decision if needed
+            return;
+        }
+
+        int time = this.simulation.getPassedTime();
+        this.plannedTime = time;
+        Path path = this.currentPath;
+        this.searchParcel();
+
+        if (this.currentPath != path || this.wantsToCharge) {
+            this.nextDecisionTime = time;
+            this.simulation.wake(this);
+        }
+    }
+
+    /**
+     * Returns whether less than a third of the battery is left.
+     */
+    public boolean isBatteryLow() {
+        return 3 * this.batteryLevel < this.batteryLevelFull;
+    }
+
+    // whether a node further along the current path is occupied by another agent
+    private boolean isPathBlocked() {
+        if (this.currentPath == null) return false;
+        int cell = this.graph.getCell(this.position);
+        for (int i = 1; i < this.currentPath.size(); i++) {
+            int next = this.currentPath.get(i);
+            if (next != cell && this.graph.isBlocked(next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void updatePathMovement() {
         this.getOutOfTheWay();
 
@@ -98,15 +272,36 @@ public abstract class Agent extends SimulationObject {
             return;
         }
 
-        this.currentPath = this.currentPath.subList(1, this.currentPath.size());
+        this.currentPath.advance();
+
+        if (this.currentPath.isEmpty() && this.transporting && !this.position.equals(this.currentParcel.getDeliveryLocation())) {
+            // the end of a partial path, planned further from here
+            this.currentPath = null;
+            this.reroutePath();
+            if (this.currentPath == null) {
+                // tries again at the next decision, still carrying the parcel
+                this.simulation.getChangeBus().publishConflicts(this.simulation.getNodeAt(this.position), this);
+                return;
+            }
+            this.currentPath.advance();
+        }
 
-        if (this.currentPath.size() == 0) {
+        if (this.currentPath.isEmpty()) {
             this.cancelParcelTask();
             this.currentPath = null;
+            // stays on this node, which others may have planned to pass
+            this.simulation.getChangeBus().publishConflicts(this.simulation.getNodeAt(this.position), this);
+            return;
+        }
+
+        this.nextPosition = this.graph.getPoint(this.currentPath.get(0));
+
+        if (this.nextPosition.equals(this.position)) {
+            // planned wait: stay on this node for the time it takes to travel one
+            this.nextDecisionTime = this.simulation.getPassedTime() + NODE_TRAVEL_TIME + 1;
             return;
         }
 
-        this.nextPosition = this.currentPath.get(0);
         Node nextNode = this.simulation.getNodeAt(nextPosition);
 
         if (nextNode.isBlocked()) {
@@ -114,17 +309,26 @@ public abstract class Agent extends SimulationObject {
         } else {
             Node currentNode = this.simulation.getNodeAt(this.position);
             currentNode.setBlocked(false);
+            if (this.simulation.getBatteryStationAt(this.position) != null) {
+                this.simulation.getChangeBus().publish(ChangeBus.STATION_FREED);
+            }
             nextNode.setBlocked(true);
             this.inBetweenNodes = true;
+
+            int dx = Math.abs(this.nextPosition.getX() - this.position.getX());
+            int dy = Math.abs(this.nextPosition.getY() - this.position.getY());
+            this.departureTime = this.simulation.getPassedTime();
+            this.arrivalTime = this.departureTime + Math.max(dx, dy);
         }
     }
 
     public void reroutePath() {
         if (this.transporting) {
             this.cancelCurrentPath();
-            List<Point> path = new ArrayList<>();
+            Path path = new Path();
             int time = this.getShortestUnreservedPath(path, this.position, this.currentParcel.getDeliveryLocation());
-            if (time >= 0) {
+            if (time >= 0 || (time == -3 && path.size() > 1)) {
+                // a partial path is planned further from where it ends
                 this.selectAndReservePath(path);
             }
         } else {
@@ -139,14 +343,29 @@ public abstract class Agent extends SimulationObject {
     public void cancelCurrentPath() {
         if (this.currentPath == null) return;
 
-        for (Point p : this.currentPath) {
-            Node node = this.simulation.getNodeAt(p);
-            node.cancelReservationsFor(this);
-        }
-
+        this.releaseReservationsAfter(this.simulation.getPassedTime());
         this.currentPath = null;
     }
 
+    /**
+     * Releases the reservations of this agent after the given time, for example the rest of a plan that is abandoned
+     * partway: the ones that start later are cancelled, and the one in progress is shortened to end at that time, so
+     * that the node it holds stays reserved until then. Reservations that are already over are forgotten.
+     */
+    public void releaseReservationsAfter(int time) {
+        int now = this.simulation.getPassedTime();
+        int kept = 0;
+        for (Reservation reservation : this.reservations) {
+            if (reservation.getEndTime() > time) {
+                reservation.truncate(time);
+            }
+            if (!reservation.isCancelled() && reservation.getEndTime() > now) {
+                this.reservations.set(kept++, reservation);
+            }
+        }
+        this.reservations.subList(kept, this.reservations.size()).clear();
+    }
+
     public void cancelParcelTask() {
         if (this.currentParcel != null) {
             this.currentParcel.setBeingTransported(false);
@@ -175,27 +394,28 @@ public abstract class Agent extends SimulationObject {
         }*/
 
         if (this.wantsToCharge && (this.currentBatteryStation == null ||
-                    (this.currentPath == null && !this.getPosition().equals(this.currentBatteryStation.getPosition())))) {
+                    (this.currentPath == null && !this.getPosition().equals(this.currentBatteryStation.getPosition())))
+                && (!this.stationSearchFailed || this.shouldReplan(ChangeBus.STATION_FREED | ChangeBus.MOVED))) {
             int distance = Integer.MAX_VALUE;
             BatteryStation bestStation = null;
 
             for (BatteryStation station : this.simulation.getBatteryStations()) {
                 if (station.isReserved()) continue;
-                List<Point> path;
-                try {
-                    path = this.graph.getShortestPath(this.position, station.getPosition());
-                } catch (IllegalArgumentException e) {
-                    continue;
-                }
-                if (path.size() > this.batteryLevel) continue;  // can't reach that
-                if (path.size() < distance) {
-                    distance = path.size();
+                Point stationPosition = station.getPosition();
+                if (this.graph.isBlockedAt(stationPosition) && !stationPosition.equals(this.position)) continue;
+                if (!this.graph.isConnected(this.position, stationPosition)) continue;
+                int hops = this.simulation.getDistanceField(stationPosition).getDistance(this.position);
+                if (hops < 0) continue;
+                int size = hops + 1;
+                if (size > this.batteryLevel) continue;  // can't reach that
+                if (size < distance) {
+                    distance = size;
                     bestStation = station;
                 }
             }
 
             if (bestStation != null) {
-                List<Point> path = new ArrayList<>();
+                Path path = new Path();
                 int time = this.getShortestUnreservedPath(path, this.position, bestStation.getPosition());
                 if (time >= 0) {
                     this.selectAndReservePath(path);
@@ -203,29 +423,18 @@ public abstract class Agent extends SimulationObject {
                     this.currentBatteryStation.reserve(this);
                 }
             }
+            this.stationSearchFailed = this.currentBatteryStation == null;
         }
     }
 
     public int getDistanceToClosestBatteryStation(Point from) {
-        int shortestDistance = Integer.MAX_VALUE;
-
-        for (BatteryStation station : this.simulation.getBatteryStations()) {
-            List<Point> p;
-            try {
-                p = this.graph.getShortestPath(from, station.getPosition());
-            } catch (IllegalArgumentException e) {
-                continue;
-            }
-            if (p.size() < shortestDistance) {
-                shortestDistance = p.size();
-            }
-        }
-
-        if (shortestDistance == Integer.MAX_VALUE) {
+        int hops = this.simulation.getBatteryStationField().getDistance(from);
+        if (hops < 0) {
             return -1;
         }
 
-        return shortestDistance;
+        // number of points on the path, both end points included
+        return hops + 1;
     }
 
     public void goChargeBattery() {
@@ -233,7 +442,7 @@ public abstract class Agent extends SimulationObject {
             if (this.batteryLevel == this.batteryLevelFull) {
                 this.wantsToCharge = false;
                 this.currentBatteryStation = null;
-                Main.timesCharged += 1;
+                this.simulation.getTracker().addCharge();
             }
         }
     }
@@ -260,19 +469,102 @@ public abstract class Agent extends SimulationObject {
         }
     }
 
+    /**
+     * Returns whether the agent is waiting for a parcel to transport.
+     */
+    public boolean isIdle() {
+        return this.currentParcel == null && !this.wantsToCharge && !this.inBetweenNodes && this.batteryLevel > 0;
+    }
+
+    /**
+     * Takes on the given parcel, as pushed by the dispatcher, and acts on it right away.
+     *
+     * @return whether a path to pick up and deliver the parcel was found
+     */
+    public boolean assignParcel(Parcel parcel) {
+        Path path = new Path();
+        int deliveryTime = this.getBestParcelPath(path, parcel);
+        if (deliveryTime == -2) {
+            this.wantsToCharge = true;
+        }
+        if (deliveryTime < 0) {
+            return false;
+        }
+
+        this.cancelParcelTask();
+        this.currentParcel = parcel;
+        parcel.reserve(this, deliveryTime);
+        this.selectAndReservePath(path);
+
+        this.nextDecisionTime = this.simulation.getPassedTime();
+        this.simulation.wake(this);
+        return true;
+    }
+
+    // the number of nearest parcels whose distances are found with a single search,
+    // and the number of parcels for which searchParcel plans an exact path
+    private static final int SWEEP_CANDIDATES = 32;
+    private static final int EXACT_CANDIDATES = 8;
+
     public void searchParcel() {
+        if (this.simulation.getDispatcher() != null) {
+            // parcels are pushed by the dispatcher instead
+            return;
+        }
+
         //int other = 0;
         int batteryTooLow = 0;
+        int currentTime = this.simulation.getPassedTime();
+
+        // visit the waiting parcels by a lower bound on their delivery time, first ignoring walls (from the index),
+        // and then, for a batch of the nearest ones at a time, only ignoring reservations (from one search to all of
+        // them), and plan exact paths, taking the reservations into account, only for the most promising ones
+        ParcelIndex.Search search = this.simulation.getParcelIndex().search(this.position);
+        boolean searchDone = false;
+        PriorityQueue<ParcelPath> estimates = new PriorityQueue<>(16,
+                Comparator.comparingInt((ParcelPath estimate) -> estimate.deliveryTime).thenComparingInt(estimate -> estimate.parcel.order));
         PriorityQueue<ParcelPath> queue = new PriorityQueue<>(16, this::heuristic);
+        ParcelPath bestOnTime = null;
+        this.parcelSearchBlocked = false;
+        PlanningScheduler scheduler = this.simulation.getPlanningScheduler();
+
+        while (queue.size() < EXACT_CANDIDATES) {
+            // the parcels that are not in the estimates yet have at least the lower bound of the last one from the index
+            if (!searchDone && (estimates.isEmpty()
+                    || estimates.peek().deliveryTime > currentTime + search.getLowerBound() * NODE_TRAVEL_TIME)) {
+                searchDone = !this.sweepParcels(search, estimates, currentTime);
+                continue;
+            }
+            if (estimates.isEmpty()) break;
+
+            if (scheduler != null && scheduler.isExhausted()) {
+                // out of planning time for this tick, go on with the parcels found so far or try again next decision
+                this.parcelSearchBlocked = true;
+                break;
+            }
+            ParcelPath estimate = estimates.poll();
+            Parcel candidate = estimate.parcel;
+            if (bestOnTime != null && this.heuristic(estimate, bestOnTime) >= 0) {
+                // can not be delivered before the best one that is on time, and only a parcel that is late already
+                // by its lower bound (which the parcels that are left may still be) ranks ahead of it
+                continue;
+            }
 
-        for (Parcel parcel : this.simulation.getParcels()) {
-            List<Point> bestPath = new ArrayList<>();
-            int deliveryTime = this.getBestParcelPath(bestPath, parcel);
+            Path bestPath = new Path();
+            int deliveryTime = this.getBestParcelPath(bestPath, candidate);
             if (deliveryTime == -2) batteryTooLow += 1;
             //if (deliveryTime == -1) other += 1;
+            if (deliveryTime == -1 || deliveryTime == -3) {
+                // may work out at a later decision, unlike a parcel that can not be reached at all (-4)
+                this.parcelSearchBlocked = true;
+            }
             if (deliveryTime < 0) continue;
 
-            queue.add(new ParcelPath(parcel, bestPath, deliveryTime));
+            ParcelPath parcelPath = new ParcelPath(candidate, bestPath, deliveryTime);
+            queue.add(parcelPath);
+            if (deliveryTime < candidate.getDeadline() && (bestOnTime == null || deliveryTime < bestOnTime.deliveryTime)) {
+                bestOnTime = parcelPath;
+            }
         }
 
         ParcelPath bestParcelPath = null;
@@ -308,6 +600,49 @@ public abstract class Agent extends SimulationObject {
         }
     }
 
+    /**
+     * Takes the next nearest parcels from the index, finds the distances to all of them with one search, and adds
+     * the resulting lower bounds on their delivery times to the given estimates. Parcels that can not be reached, or
+     * that are reserved by an agent that can not be beaten, are left out.
+     *
+     * @return whether any parcel was taken from the index
+     */
+    private boolean sweepParcels(ParcelIndex.Search search, PriorityQueue<ParcelPath> estimates, int currentTime) {
+        List<Parcel> candidates = new ArrayList<>();
+        List<Point> positions = new ArrayList<>();
+        boolean taken = false;
+        Parcel candidate;
+
+        while (candidates.size() < SWEEP_CANDIDATES && (candidate = search.next()) != null) {
+            taken = true;
+            ParcelPath estimate = new ParcelPath(candidate, null, currentTime + search.getLowerBound() * NODE_TRAVEL_TIME);
+            if (this.isTakenBetter(estimate)) continue;
+            candidates.add(candidate);
+            positions.add(candidate.getPosition());
+        }
+        if (candidates.isEmpty()) {
+            return taken;
+        }
+
+        int[] distances = this.graph.getDistances(this.position, positions, Integer.MAX_VALUE);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (distances[i] < 0) continue;
+            candidate = candidates.get(i);
+            int hops = distances[i] + candidate.getDeliveryLegLength();
+            ParcelPath estimate = new ParcelPath(candidate, null, currentTime + hops * NODE_TRAVEL_TIME);
+            if (!this.isTakenBetter(estimate)) {
+                estimates.add(estimate);
+            }
+        }
+        return true;
+    }
+
+    // whether the parcel is reserved by an agent that delivers it at least as well as the given estimate
+    private boolean isTakenBetter(ParcelPath estimate) {
+        Parcel parcel = estimate.parcel;
+        return parcel.isReserved() && this.heuristic(estimate, new ParcelPath(parcel, null, parcel.getCurrentDeliveryTime())) >= 0;
+    }
+
     public int heuristic(ParcelPath o1, ParcelPath o2) {
         if (o1 == o2) return 0;
 
@@ -336,75 +671,102 @@ public abstract class Agent extends SimulationObject {
         }
     }
 
-    public int getBestParcelPath(List<Point> path, Parcel parcel) {
-        int time1 = this.getShortestUnreservedPath(path, this.position, parcel.getPosition());
-        if (time1 < 0) return -1;
-        path.remove(path.size() - 1);
-        int time2 = this.getShortestUnreservedPath(path, parcel.getPosition(), parcel.getDeliveryLocation());
-        if (time2 < 0) return -1;
+    /**
+     * Appends the path to pick up and deliver the given parcel.
+     *
+     * @return the delivery time, -2 if the battery is too low, or otherwise the failure of the path search
+     * (see getShortestUnreservedPath)
+     */
+    public int getBestParcelPath(Path path, Parcel parcel) {
+        int currentTime = this.simulation.getPassedTime();
+        int time1 = this.getShortestUnreservedPath(path, this.position, parcel.getPosition(), currentTime);
+        if (time1 < 0) return time1;
+        path.removeLast();
+        int time2 = this.getDeliveryLeg(path, parcel, currentTime + time1);
+        if (time2 < 0) return time2;
 
-        return this.simulation.getPassedTime() + time1 + time2;
+        return currentTime + time1 + time2;
     }
 
-    public int getShortestUnreservedPath(List<Point> path, Point from, Point to) {
-        List<List<Point>> paths;
-
-        try {
-            paths = this.graph.getMultiplePaths(from, to, 5);
-        } catch (IllegalArgumentException e) {
-            return -1;
-        }
-
-        int currentTime = this.simulation.getPassedTime();
-        int bestTime = Integer.MAX_VALUE;
-        List<Point> bestPath = null;
-
-        for (List<Point> p : paths) {
-            int totalPathTime = this.sendExplorationAnt(p, currentTime);
-            if (totalPathTime < 0) continue;
-            if (totalPathTime < bestTime) {
-                bestTime = totalPathTime;
-                bestPath = p;
-            }
+    /**
+     * Appends the path from the given parcel to its delivery location, departing at the given time. The cached
+     * delivery leg of the parcel is taken if it is free at that time, otherwise a conflict-free path is planned.
+     * Either way the travel time is the same as planning it.
+     *
+     * @return the time needed to travel the path, or a negative value as given by getShortestUnreservedPath
+     */
+    public int getDeliveryLeg(Path path, Parcel parcel, int startTime) {
+        Path leg = parcel.getDeliveryPath();
+        if (leg == null) {
+            return -4;
+        }
+
+        int time = startTime;
+        boolean free = true;
+        for (int i = 1; i < leg.size() && free; i++) {
+            int cell = leg.get(i);
+            free = !this.graph.isBlocked(cell) && !this.simulation.getNodeAt(cell).isReserved(time, time + NODE_TRAVEL_TIME, this)
+                    && !this.isSwap(leg.get(i - 1), cell, time);
+            time += NODE_TRAVEL_TIME;
         }
 
-        if (bestPath == null) {
-            return -1;
+        if (free) {
+            path.addAll(leg);
+            return time - startTime;
         }
-
-        path.addAll(bestPath);
-        return bestTime;
+        return this.getShortestUnreservedPath(path, parcel.getPosition(), parcel.getDeliveryLocation(), startTime);
     }
 
-    public int sendExplorationAnt(List<Point> path, int currentTime) {
-        int time = currentTime;
+    public int getShortestUnreservedPath(Path path, Point from, Point to) {
+        return this.getShortestUnreservedPath(path, from, to, this.simulation.getPassedTime());
+    }
 
-        for (int i = 1; i < path.size(); i++) {
-            Node node = this.simulation.getNodeAt(path.get(i));
-            if (node.isReserved(time, time + NODE_TRAVEL_TIME)) {
+    /**
+     * Plans the earliest conflict-free path between the given points, departing at the given time,
+     * and appends it to the given path.
+     *
+     * @return the time needed to travel the path, -1 if other agents are in the way for now, -3 if the search ran
+     * out of expansions (its share of the planning budget), or -4 if the points are not connected at all.
+     * On -3 the path towards the goal that was found so far is appended, which can be followed while waiting for
+     * another turn to plan the rest.
+     */
+    public int getShortestUnreservedPath(Path path, Point from, Point to, int startTime) {
+        PlanningScheduler scheduler = this.simulation.getPlanningScheduler();
+        int limit = scheduler == null ? Integer.MAX_VALUE : scheduler.getSearchLimit();
+        int size = path.size();
+
+        switch (this.simulation.getPlanner().plan(this, from, to, startTime, path, limit)) {
+            case FOUND:
+                return (path.size() - size - 1) * NODE_TRAVEL_TIME;
+            case OVER_BUDGET:
+                return -3;
+            case UNREACHABLE:
+                return -4;
+            default:
                 return -1;
-            }
-            time += NODE_TRAVEL_TIME;
         }
+    }
 
-        return time - currentTime;
+    // whether moving between the given cells from the given time meets another agent moving the opposite way
+    private boolean isSwap(int from, int to, int time) {
+        return from != to && this.simulation.getNodeAt(from).isEnteredFrom(to, time, time + NODE_TRAVEL_TIME, this);
     }
 
-    public void selectAndReservePath(List<Point> path) {
+    public void selectAndReservePath(Path path) {
         if (this.currentPath != null) {
             this.cancelCurrentPath();
         }
         this.currentPath = path;
-        this.currentDestination = path.get(path.size() - 1);
+        this.currentDestination = this.graph.getPoint(path.getLast());
         sendReservationAnt(path, this.simulation.getPassedTime());
     }
 
-    public void sendReservationAnt(List<Point> path, int currentTime) {
+    public void sendReservationAnt(Path path, int currentTime) {
         int time = currentTime;
 
         for (int i = 1; i < path.size(); i++) {
             Node node = this.simulation.getNodeAt(path.get(i));
-            node.reserve(this, time, time + NODE_TRAVEL_TIME);
+            this.reservations.add(node.reserve(this, time, time + NODE_TRAVEL_TIME, path.get(i - 1)));
             time += NODE_TRAVEL_TIME;
         }
     }
@@ -423,7 +785,7 @@ public abstract class Agent extends SimulationObject {
             this.goToRandomFreeLocation();
         }
 
-        if (this.position.equals(this.currentDestination) ) {
+        if (this.position.equals(this.currentDestination) && !this.transporting) {
             boolean done = false;
 
             if (!this.wantsToCharge) {
@@ -452,52 +814,56 @@ public abstract class Agent extends SimulationObject {
         this.transporting = false;
         this.currentBatteryStation = null;
 
-        List<Point> path = new ArrayList<>();
+        Path path = new Path();
         Point freePoint = this.findFreeLocation();
         int time = this.getShortestUnreservedPath(path, this.position, freePoint);
-        if (time >= 0) {
-            if (path.size() > 4) {
-                path = path.subList(0, 4);
-            }
+        if (time >= 0 || (time == -3 && path.size() > 1)) {
+            path.truncate(4);
             this.selectAndReservePath(path);
         }
     }
 
     public Point findFreeLocation() {
-        while (true) {
-            Point point = this.graph.getRandomPoint();
-            boolean free = true;
-            for (SimulationObject object : this.simulation.getObjects()) {
-                if (object instanceof Agent || object instanceof BatteryStation || object instanceof DeliveryLocation) {
-                    if (object.getPosition().equals(point)) {
-                        free = false;
-                        break;
-                    }
-                }
+        return this.simulation.getRandomFreeLocation(this.position);
+    }
+
+    /**
+     * Moves towards the next position. Only the first tick of a move (when the agent leaves its node) and the tick
+     * of arrival change anything; in between the position is interpolated by getPosition.
+     */
+    public void move() {
+        int time = this.simulation.getPassedTime();
+
+        if (time == this.departureTime + 1) {
+            // no longer on any node
+            this.simulation.objectMoved(this, this.position);
+            this.wakeBatteryStationAt(this.position);
+            if (this.transporting) {
+                this.currentParcel.setPosition(this.getPosition());
             }
-            if (free) {
-                return point;
+
+            // for drawing
+            int dx = this.nextPosition.getX() - this.position.getX();
+            int dy = this.nextPosition.getY() - this.position.getY();
+            if (dx == 0) {
+                this.direction = dy < 0 ? 90 : 270;
+            } else if (dy == 0) {
+                this.direction = dx < 0 ? 180 : 0;
             }
         }
-    }
 
-    public void move() {
-        int speed = 1;
-        Point point1 = this.position;
-        Point point2 = this.nextPosition;
-        //Point point2 = this.currentPath.get(0);
-        int dx = point2.getX() - point1.getX();
-        int dy = point2.getY() - point1.getY();
-        int speedX = Math.min(Math.abs(dx), speed);
-        int speedY = Math.min(Math.abs(dy), speed);
-        dx = (int) Math.signum((double) dx) * speedX;
-        dy = (int) Math.signum((double) dy) * speedY;
-        this.position = Point.add(this.position, new Point(dx, dy));
-
-        if (this.position.equals(point2)) {
+        if (time >= this.arrivalTime) {
+            Point previous = this.getPositionAfter(this.arrivalTime - this.departureTime - 1);
             this.inBetweenNodes = false;
+            super.setPosition(this.nextPosition);
+            this.simulation.objectMoved(this, previous);
+            this.wakeBatteryStationAt(this.position);
 
             this.batteryLevel -= 1;
+            this.simulation.getChangeBus().publish(this, ChangeBus.MOVED);
+            if (3 * this.batteryLevel < this.batteryLevelFull && 3 * (this.batteryLevel + 1) >= this.batteryLevelFull) {
+                this.simulation.getChangeBus().publish(this, ChangeBus.BATTERY_LOW);
+            }
             if (this.batteryLevel <= 0) {
                 this.batteryLevel = 0;
                 System.out.println("*BATTERY DEPLETED*");
@@ -505,17 +871,10 @@ public abstract class Agent extends SimulationObject {
             if (this.batteryLevel < 15) {
                 //System.out.println("OUT OF ENERGY: " + this.batteryLevel);
             }
-        }
-
-        if (this.transporting) {
-            this.currentParcel.setPosition(this.position);
-        }
 
-        // for drawing
-        if (dx == 0) {
-            this.direction = dy < 0 ? 90 : 270;
-        } else if (dy == 0) {
-            this.direction = dx < 0 ? 180 : 0;
+            if (this.transporting) {
+                this.currentParcel.setPosition(this.position);
+            }
         }
     }
 }
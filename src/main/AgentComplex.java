@@ -2,7 +2,6 @@ package main;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
 import java.util.PriorityQueue;
 
 /**
@@ -16,14 +15,15 @@ public class AgentComplex extends Agent {
     }
 
     @Override
-    public int getBestParcelPath(List<Point> path, Parcel parcel) {
-        int time1 = this.getShortestUnreservedPath(path, this.position, parcel.getPosition());
-        if (time1 < 0) return -1;
-        path.remove(path.size() - 1);
-        int time2 = this.getShortestUnreservedPath(path, parcel.getPosition(), parcel.getDeliveryLocation());
-        if (time2 < 0) return -1;
+    public int getBestParcelPath(Path path, Parcel parcel) {
+        int currentTime = this.simulation.getPassedTime();
+        int time1 = this.getShortestUnreservedPath(path, this.position, parcel.getPosition(), currentTime);
+        if (time1 < 0) return time1;
+        path.removeLast();
+        int time2 = this.getDeliveryLeg(path, parcel, currentTime + time1);
+        if (time2 < 0) return time2;
 
-        int shortestDistance = this.getDistanceToClosestBatteryStation(parcel.getDeliveryLocation());
+        int shortestDistance = parcel.getChargerDistance();
         if (shortestDistance < 0) {
             return -1;
         }
@@ -35,6 +35,6 @@ public class AgentComplex extends Agent {
             return -2;
         }
 
-        return this.simulation.getPassedTime() + time1 + time2;
+        return currentTime + time1 + time2;
     }
 }
\ No newline at end of file
@@ -29,7 +29,7 @@ public class AgentSimple extends Agent {
 
             //this.searchParcel();
             deliverCount += 1;
-            if (deliverCount == Main.simpleDeliveryCount) {
+            if (deliverCount == this.simulation.getSettings().simpleDeliveryCount) {
                 this.wantsToCharge = true;
                 deliverCount = 0;
             }
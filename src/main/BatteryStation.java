@@ -8,7 +8,7 @@ public class BatteryStation extends SimulationObject {
     private Agent user = null;
     private boolean charging = false;
     private int chargeDelay = 2;
-    private int chargeTimer = 0;
+    private int nextChargeTime = -1;
 
     public BatteryStation(int x, int y) {
         super(x, y);
@@ -21,10 +21,14 @@ public class BatteryStation extends SimulationObject {
     public void reserve(Agent agent) {
         if (!this.isReserved()) {
             this.user = agent;
+            this.simulation.wake(this);
         }
     }
 
     public void free() {
+        if (this.user != null) {
+            this.simulation.getChangeBus().publish(ChangeBus.STATION_FREED);
+        }
         this.user = null;
     }
 
@@ -34,25 +38,31 @@ public class BatteryStation extends SimulationObject {
         this.graph = graph;
     }
 
+    @Override
+    public int getNextTickTime(int time) {
+        // the user wakes the station when it arrives or leaves, so only the charging steps have to be scheduled
+        return this.user != null && this.charging ? this.nextChargeTime : -1;
+    }
+
     @Override
     public void tick() {
+        int time = this.simulation.getPassedTime();
         if (this.user != null) {
             if (this.charging) {
                 if (!this.user.getPosition().equals(this.position)) {
+                    this.simulation.getChangeBus().publish(ChangeBus.STATION_FREED);
                     this.user = null;
-                    this.chargeTimer = 0;
                     this.charging = false;
                     return;
                 }
 
-                if (this.chargeTimer < this.chargeDelay) {
-                    this.chargeTimer += 1;
-                } else {
-                    this.chargeTimer = 0;
+                if (time >= this.nextChargeTime) {
+                    this.nextChargeTime = time + this.chargeDelay + 1;
 
                     if (this.user.batteryLevel < this.user.batteryLevelFull) {
-                        if (Main.chargingMultiplier > 0) {
-                            this.user.batteryLevel += 1 * Main.chargingMultiplier;
+                        int chargingMultiplier = this.simulation.getSettings().chargingMultiplier;
+                        if (chargingMultiplier > 0) {
+                            this.user.batteryLevel += 1 * chargingMultiplier;
                         } else {
                             this.user.batteryLevel = this.user.batteryLevelFull;
                         }
@@ -60,9 +70,11 @@ public class BatteryStation extends SimulationObject {
                     if (this.user.batteryLevel > this.user.batteryLevelFull) {
                         this.user.batteryLevel = this.user.batteryLevelFull;
                     }
+                    this.simulation.wake(this.user);
                 }
             } else if (this.user.getPosition().equals(this.position)) {
                 this.charging = true;
+                this.nextChargeTime = time + this.chargeDelay + 1;
             }
         }
     }
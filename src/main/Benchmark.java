@@ -0,0 +1,275 @@
+package main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Micro and end-to-end benchmarks for pathfinding, reservations, parcel search and full simulation ticks.
+ * Every benchmark is warmed up first and then measured for a number of timed iterations. The results are printed
+ * (or written to a file) as one JSON object per line.
+ *
+ * Usage: java -cp out main.Benchmark [--filter substring] [--warmup 1] [--iterations 3] [--seconds 1] [--out file]
+ */
+public class Benchmark {
+
+    private interface Operation {
+        // runs the operation once and returns something that depends on its result
+        long run();
+    }
+
+    private static String filter = "";
+    private static int warmupIterations = 1;
+    private static int iterations = 3;
+    private static double secondsPerIteration = 1;
+    private static PrintWriter out;
+
+    // results are published here so that the JIT can not remove the measured operations
+    private static volatile long sink = 0;
+
+    public static void main(String[] args) throws IOException {
+        String outFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+
+                switch (option) {
+                    case "--filter":
+                        filter = value;
+                        break;
+                    case "--warmup":
+                        warmupIterations = Integer.parseInt(value);
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(value);
+                        break;
+                    case "--seconds":
+                        secondsPerIteration = Double.parseDouble(value);
+                        break;
+                    case "--out":
+                        outFile = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: main.Benchmark [--filter substring] [--warmup n] [--iterations n] [--seconds x]"
+                    + " [--out file]");
+            System.exit(1);
+            return;
+        }
+
+        out = outFile == null ? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(outFile), true);
+
+        String warehouse = Headless.readMap("warehouse.mpm");
+        String large = generateMap(48, 64, 40);
+
+        benchmarkPathfinding("warehouse", warehouse, Main.gridHeight, Main.gridWidth);
+        benchmarkPathfinding("generated-48x64", large, 48, 64);
+
+        for (int density : new int[] {0, 4, 16, 64}) {
+            benchmarkReservations(density);
+        }
+
+        for (int parcels : new int[] {10, 50, 200}) {
+            benchmarkSearchParcel(warehouse, parcels);
+        }
+
+        for (String agentType : new String[] {"simple", "naive", "complex"}) {
+            benchmarkTicks("warehouse", warehouse, Main.gridHeight, Main.gridWidth, agentType, 100);
+        }
+        benchmarkTicks("generated-48x64", large, 48, 64, "complex", 400);
+
+        out.flush();
+        if (outFile != null) {
+            out.close();
+        }
+    }
+
+    private static void benchmarkPathfinding(String name, String map, int rows, int columns) {
+        Simulation simulation = createSimulation(map, rows, columns, new Settings());
+        Graph graph = simulation.getGraph();
+
+        int pairs = 256;
+        Point[] from = new Point[pairs];
+        Point[] to = new Point[pairs];
+        for (int i = 0; i < pairs; i++) {
+            from[i] = simulation.getRandomFreeLocation();
+            to[i] = simulation.getRandomFreeLocation();
+        }
+
+        int[] index = {0};
+        measure("graph.getShortestPath", name, () -> {
+            int i = index[0]++ & (pairs - 1);
+            PathResult result = graph.getShortestPath(from[i], to[i], Integer.MAX_VALUE);
+            return result.isFound() ? result.getPath().size() : 0;
+        });
+
+        measure("graph.getShortestPath", name + ",limit=64", () -> {
+            int i = index[0]++ & (pairs - 1);
+            return graph.getShortestPath(from[i], to[i], 64).getExpansions();
+        });
+    }
+
+    private static void benchmarkReservations(int density) {
+        Simulation simulation = createSimulation("", 4, 4, new Settings());
+        Node node = simulation.getNodeAt(new Point(0, 0));
+        Agent[] agents = {new AgentSimple(32, 0), new AgentSimple(64, 0), new AgentSimple(96, 0)};
+
+        Random random = new Random(1);
+        int horizon = 64 * Main.cellSize;
+        for (int i = 0; i < density; i++) {
+            int start = random.nextInt(horizon);
+            node.reserve(agents[i % agents.length], start, start + Main.cellSize);
+        }
+
+        int[] starts = new int[1024];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = random.nextInt(horizon);
+        }
+
+        int[] index = {0};
+        measure("node.isReserved", "reservations=" + density, () -> {
+            int start = starts[index[0]++ & (starts.length - 1)];
+            return node.isReserved(start, start + Main.cellSize) ? 1 : 0;
+        });
+    }
+
+    private static void benchmarkSearchParcel(String map, int parcels) {
+        Simulation simulation = createSimulation(map, Main.gridHeight, Main.gridWidth, new Settings());
+        for (int i = 0; i < parcels; i++) {
+            Point from = simulation.getRandomFreeLocation();
+            simulation.register(new Parcel(from, simulation.getRandomDeliveryLocation(), 0));
+        }
+        Agent agent = simulation.getAgents().get(0);
+
+        measure("agent.searchParcel", "parcels=" + parcels, () -> {
+            agent.searchParcel();
+            long result = agent.currentParcel == null ? 0 : agent.currentParcel.getDeadline();
+            agent.cancelParcelTask();
+            return result;
+        });
+    }
+
+    private static void benchmarkTicks(String name, String map, int rows, int columns, String agentType, int parcels) {
+        Settings settings = new Settings();
+        settings.agentType = agentType;
+        settings.parcelAmount = parcels;
+
+        Simulation[] simulation = {null};
+        measure("simulation.simulate", name + ",agent=" + agentType, () -> {
+            if (simulation[0] == null || simulation[0].getParcelsDelivered() >= parcels) {
+                simulation[0] = createSimulation(map, rows, columns, settings.copy());
+                simulation[0].setupParcelEvents();
+            }
+            simulation[0].simulate();
+            return simulation[0].getPassedTime();
+        });
+    }
+
+    private static Simulation createSimulation(String map, int rows, int columns, Settings settings) {
+        Simulation simulation = new Simulation(new Graph(rows, columns, Main.cellSize), settings);
+        simulation.loadMap(map);
+        return simulation;
+    }
+
+    private static void measure(String benchmark, String parameters, Operation operation) {
+        if (!(benchmark + " " + parameters).contains(filter)) {
+            return;
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(operation);
+        }
+
+        List<Double> scores = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            scores.add(runIteration(operation));
+        }
+
+        double mean = 0;
+        for (double score : scores) mean += score;
+        mean /= scores.size();
+
+        double variance = 0;
+        for (double score : scores) variance += (score - mean) * (score - mean);
+        double deviation = scores.size() > 1 ? Math.sqrt(variance / (scores.size() - 1)) : 0;
+
+        out.println(String.format(Locale.ROOT,
+                "{\"benchmark\": \"%s\", \"params\": \"%s\", \"mode\": \"throughput\", \"unit\": \"ops/s\", "
+                        + "\"score\": %.3f, \"error\": %.3f, \"nsPerOp\": %.1f, \"iterations\": %d}",
+                benchmark, parameters, mean, deviation, 1e9 / mean, scores.size()));
+    }
+
+    // returns the number of operations per second
+    private static double runIteration(Operation operation) {
+        long duration = (long) (secondsPerIteration * 1e9);
+        long start = System.nanoTime();
+        long end = start + duration;
+        long count = 0;
+        long result = 0;
+        long now = start;
+
+        // slow operations run once per batch, fast ones in batches long enough to hide the clock reads
+        int batch = 1;
+        do {
+            long batchStart = now;
+            for (int i = 0; i < batch; i++) {
+                result += operation.run();
+            }
+            count += batch;
+            now = System.nanoTime();
+            if (now - batchStart < 10_000 && batch < 1 << 16) {
+                batch *= 2;
+            }
+        } while (now < end);
+
+        sink = result;
+        return count / ((now - start) / 1e9);
+    }
+
+    /**
+     * Generates a warehouse-like map: rows of shelves with aisles in between, battery stations in the middle
+     * column, delivery locations on the left and right edges and agents spread over the central aisle.
+     */
+    public static String generateMap(int rows, int columns, int agents) {
+        StringBuilder sb = new StringBuilder();
+        int cellSize = Main.cellSize;
+        int middle = columns / 2;
+
+        for (int row = 2; row < rows - 2; row += 3) {
+            for (int col = 3; col < columns - 3; col++) {
+                if (Math.abs(col - middle) <= 1 || col % 12 == 0) continue;
+                sb.append("wall ").append(row).append(" ").append(col).append("\n");
+            }
+        }
+
+        for (int row = 1; row < rows; row += 4) {
+            sb.append("battery ").append(middle * cellSize).append(" ").append(row * cellSize).append("\n");
+        }
+
+        for (int row = 0; row < rows; row += 4) {
+            sb.append("delivery ").append(0).append(" ").append(row * cellSize).append("\n");
+            sb.append("delivery ").append((columns - 1) * cellSize).append(" ").append(row * cellSize).append("\n");
+        }
+
+        for (int i = 0; i < agents; i++) {
+            int row = (i * 2) % rows;
+            int col = i * 2 < rows ? middle - 1 : middle + 1;
+            sb.append("agent ").append(col * cellSize).append(" ").append(row * cellSize).append("\n");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package main;
+
+import java.util.List;
+
+/**
+ * Tells agents about changes that may make them want to reconsider their plans, so that they only search for a
+ * parcel or battery station again when something relevant happened instead of at every decision.
+ * Changes are bit flags that accumulate in the agent until it acts on them.
+ */
+public class ChangeBus {
+
+    public static final int PARCEL_ARRIVED = 1;
+    public static final int PARCEL_FREED = 2;
+    public static final int PARCEL_TAKEN = 4;    // the parcel of the agent was reserved by another one
+    public static final int STATION_FREED = 8;
+    public static final int PATH_CONFLICT = 16;  // an agent stopped on a node the agent has reserved
+    public static final int BATTERY_LOW = 32;
+    public static final int MOVED = 64;          // the agent itself arrived on another node
+    public static final int ALL = 127;
+
+    private Simulation simulation;
+
+    public ChangeBus(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    /**
+     * Notifies every agent of the given change.
+     */
+    public void publish(int change) {
+        for (Agent agent : this.simulation.getAgents()) {
+            agent.notifyChange(change);
+        }
+    }
+
+    public void publish(Agent agent, int change) {
+        agent.notifyChange(change);
+    }
+
+    /**
+     * Notifies the agents that have reserved the given node from now on, except the given one, that it stays blocked.
+     */
+    public void publishConflicts(Node node, Agent blocking) {
+        List<Agent> agents = node.getAgentsReservedFrom(this.simulation.getPassedTime());
+        for (Agent agent : agents) {
+            if (agent != blocking) {
+                agent.notifyChange(PATH_CONFLICT);
+            }
+        }
+    }
+}
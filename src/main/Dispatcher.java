@@ -0,0 +1,98 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assigns the waiting parcels to the idle agents in one batch per decision window, instead of every agent searching
+ * for a parcel on its own. The cost of a pair is estimated from the distances in hops (travel time plus lateness),
+ * found with one search per agent that stops once all parcels are reached, and the assignment with the lowest total
+ * cost is pushed to the agents.
+ */
+public class Dispatcher {
+
+    // the cost of an agent and parcel that can not reach each other
+    private static final double UNREACHABLE = 1e15;
+
+    // weight of every tick a parcel is estimated to be delivered too late
+    private static final double LATENESS_WEIGHT = 4;
+
+    private Simulation simulation;
+    private Graph graph;
+    private int interval;
+    private int travelTime;
+
+    public Dispatcher(Simulation simulation, Graph graph, int interval, int travelTime) {
+        this.simulation = simulation;
+        this.graph = graph;
+        this.interval = interval;
+        this.travelTime = travelTime;
+    }
+
+    /**
+     * Returns the first dispatch time after the given one.
+     */
+    public int getNextDispatchTime(int time) {
+        return (time / this.interval + 1) * this.interval;
+    }
+
+    public boolean hasWaitingParcels() {
+        return this.simulation.getParcelIndex().hasUnreserved();
+    }
+
+    public void update(int time) {
+        if (time % this.interval == 0) {
+            this.dispatch(time);
+        }
+    }
+
+    public void dispatch(int time) {
+        List<Agent> agents = new ArrayList<>();
+        for (Agent agent : this.simulation.getAgents()) {
+            if (agent.isIdle()) agents.add(agent);
+        }
+
+        List<Parcel> parcels = new ArrayList<>();
+        for (Parcel parcel : this.simulation.getParcels()) {
+            if (!parcel.isReserved()) parcels.add(parcel);
+        }
+
+        if (agents.isEmpty() || parcels.isEmpty()) {
+            return;
+        }
+
+        // the delivery legs do not depend on the agent
+        int[] deliveryDistances = new int[parcels.size()];
+        List<Point> positions = new ArrayList<>(parcels.size());
+        for (int j = 0; j < parcels.size(); j++) {
+            deliveryDistances[j] = parcels.get(j).getDeliveryLegLength();
+            positions.add(parcels.get(j).getPosition());
+        }
+
+        double[][] costs = new double[agents.size()][parcels.size()];
+        for (int i = 0; i < agents.size(); i++) {
+            int[] distances = this.graph.getDistances(agents.get(i).getPosition(), positions, Integer.MAX_VALUE);
+
+            for (int j = 0; j < parcels.size(); j++) {
+                Parcel parcel = parcels.get(j);
+                int distance = distances[j];
+
+                if (distance < 0 || deliveryDistances[j] < 0) {
+                    costs[i][j] = UNREACHABLE;
+                } else {
+                    int travel = (distance + deliveryDistances[j]) * this.travelTime;
+                    int lateness = Math.max(0, time + travel - parcel.getDeadline());
+                    costs[i][j] = travel + LATENESS_WEIGHT * lateness;
+                }
+            }
+        }
+
+        int[] assignment = Hungarian.solve(costs);
+        for (int i = 0; i < agents.size(); i++) {
+            int j = assignment[i];
+            if (j >= 0 && costs[i][j] < UNREACHABLE) {
+                agents.get(i).assignParcel(parcels.get(j));
+            }
+        }
+    }
+}
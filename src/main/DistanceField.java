@@ -0,0 +1,100 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Distances (in hops) from every cell of the graph to the closest of a fixed set of landmarks, together with the next
+ * hop to take towards it. Only walls are taken into account, so the field stays valid until the graph changes.
+ */
+public class DistanceField {
+
+    private Graph graph;
+    private int[] sources;
+    private int[] distances;
+    private int[] nextHops;
+    private int version = -1;
+
+    public DistanceField(Graph graph, List<Point> landmarks) {
+        this.graph = graph;
+        this.sources = new int[landmarks.size()];
+        for (int i = 0; i < landmarks.size(); i++) {
+            this.sources[i] = graph.getCell(landmarks.get(i));
+        }
+    }
+
+    public DistanceField(Graph graph, Point landmark) {
+        this(graph, Collections.singletonList(landmark));
+    }
+
+    /**
+     * Returns the number of hops from the given point to the closest landmark, or -1 if none can be reached.
+     */
+    public int getDistance(Point from) {
+        if (!this.graph.containsPoint(from)) {
+            return -1;
+        }
+        this.update();
+        return this.distances[this.graph.getCell(from)];
+    }
+
+    /**
+     * Returns a shortest path (including both end points) from the given point to the closest landmark,
+     * or null if no landmark can be reached.
+     */
+    public Path getPath(Point from) {
+        int distance = this.getDistance(from);
+        if (distance < 0) {
+            return null;
+        }
+
+        Path path = new Path(distance + 1);
+        int cell = this.graph.getCell(from);
+        path.add(cell);
+        while (this.distances[cell] > 0) {
+            cell = this.nextHops[cell];
+            path.add(cell);
+        }
+        return path;
+    }
+
+    private void update() {
+        if (this.version == this.graph.getVersion()) {
+            return;
+        }
+        this.version = this.graph.getVersion();
+
+        int cells = this.graph.getHeight() * this.graph.getWidth();
+        if (this.distances == null) {
+            this.distances = new int[cells];
+            this.nextHops = new int[cells];
+        }
+        Arrays.fill(this.distances, -1);
+        Arrays.fill(this.nextHops, -1);
+
+        // (multi-source) breadth-first search outwards from the landmarks
+        int[] queue = new int[cells];
+        int head = 0;
+        int tail = 0;
+        for (int source : this.sources) {
+            if (source < 0 || source >= cells || !this.graph.hasNodeAt(source)) continue;
+            if (this.distances[source] == 0) continue;
+            this.distances[source] = 0;
+            queue[tail++] = source;
+        }
+
+        int[] neighbours = new int[4];
+        while (head < tail) {
+            int cell = queue[head++];
+            int count = this.graph.getNeighbourCells(cell, neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                if (this.distances[neighbour] >= 0) continue;
+                this.distances[neighbour] = this.distances[cell] + 1;
+                this.nextHops[neighbour] = cell;
+                queue[tail++] = neighbour;
+            }
+        }
+    }
+}
@@ -7,16 +7,76 @@ public class Graph {
     private int columns;
     private int rows;
     private int cellSize;
-    private boolean[] grid;
-
-    private double PENALTY = Main.cellSize;
+    private int version = 0;
+
+    // cells are identified by row * columns + column; nodes (cells without a wall) and cells occupied by an agent
+    // are bit sets over the cell ids
+    private long[] nodes;
+    private long[] blocked;
+
+    // offsets of the cell ids to the right, down, left and up, and for every cell which of them stay on the grid
+    private int[] neighbourOffsets;
+    private byte[] directions;
+
+    // A* search state, reused between searches (entries are only valid when stamped with the current generation)
+    private double[] distances;
+    private int[] previous;
+    private int[] seen;
+    private int[] evaluated;
+    private int generation = 0;
+    private IndexedHeap open;
+    private int[] neighbours = new int[4];
+    private int[] hops;
+    private int[] queue;
+
+    // connected component label of every node (walls only), -1 for cells without a node. Labels are merged with
+    // union-find when a wall is removed, so the component of a node is the root of its label.
+    private int[] components;
+    private Point[] points;  // the point of every cell, shared as points can not be changed
+    private int[] labelParents = new int[16];
+    private int labelCount = 0;
+    private int componentVersion = -1;
+
+    // the result of the last search
+    private int closest;
+    private int expansions;
 
     public Graph(int rows, int columns, int cellSize) {
         this.rows = rows;
         this.columns = columns;
         this.cellSize = cellSize;
-        this.grid = new boolean[rows * columns];
-        Arrays.fill(this.grid, true);
+        int cells = rows * columns;
+        this.nodes = new long[(cells + 63) >>> 6];
+        for (int cell = 0; cell < cells; cell++) {
+            this.nodes[cell >>> 6] |= 1L << cell;
+        }
+        this.blocked = new long[(cells + 63) >>> 6];
+
+        this.neighbourOffsets = new int[] {1, columns, -1, -columns};
+        this.directions = new byte[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            int row = cell / columns;
+            int col = cell % columns;
+            int mask = 0;
+            if (col + 1 < columns) mask |= 1;
+            if (row + 1 < rows) mask |= 2;
+            if (col > 0) mask |= 4;
+            if (row > 0) mask |= 8;
+            this.directions[cell] = (byte) mask;
+        }
+
+        this.distances = new double[cells];
+        this.previous = new int[cells];
+        this.seen = new int[cells];
+        this.evaluated = new int[cells];
+        this.open = new IndexedHeap(cells);
+        this.hops = new int[cells];
+        this.queue = new int[cells];
+        this.components = new int[cells];
+        this.points = new Point[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            this.points[cell] = new Point((cell % columns) * cellSize, (cell / columns) * cellSize);
+        }
     }
 
     public int getWidth() {
@@ -32,26 +92,79 @@ public class Graph {
     }
 
     public void setNodeAt(int row, int column, boolean present) {
-        this.grid[row + column * this.rows] = present;
+        int cell = row * this.columns + column;
+        if (this.hasNodeAt(cell) == present) return;
+        boolean tracked = this.componentVersion == this.version;
+        if (present) {
+            this.nodes[cell >>> 6] |= 1L << cell;
+        } else {
+            this.nodes[cell >>> 6] &= ~(1L << cell);
+        }
+        this.version += 1;
+
+        // keep the components up to date, instead of labelling the whole graph again
+        if (tracked) {
+            this.componentVersion = this.version;
+            if (present) {
+                this.joinComponents(cell);
+            } else {
+                this.splitComponent(cell);
+            }
+        }
     }
 
     public boolean hasNodeAt(int row, int column) {
-        return this.grid[row + column * this.rows];
+        return this.hasNodeAt(row * this.columns + column);
     }
 
-    public Set<Point> getPoints() {
-        Set<Point> points = new HashSet<>();
-        int cellSize = this.getCellSize();
+    public boolean hasNodeAt(int cell) {
+        return (this.nodes[cell >>> 6] & (1L << cell)) != 0;
+    }
 
-        for (int col = 0; col < this.columns; col++) {
-            for (int row = 0; row < this.rows; row++) {
-                if (!this.hasNodeAt(row, col)) continue;
-                Point node = new Point(col * cellSize, row * cellSize);
-                points.add(node);
-            }
+    /**
+     * Returns a number that changes every time a node is added to or removed from the graph.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    public int getCell(Point point) {
+        return (point.getY() / this.cellSize) * this.columns + point.getX() / this.cellSize;
+    }
+
+    /**
+     * Returns the id of the cell the given point lies exactly on, or -1 if it lies in between cells or outside the grid.
+     */
+    public int findCell(Point point) {
+        int x = point.getX();
+        int y = point.getY();
+        if (x < 0 || this.columns * this.cellSize <= x || y < 0 || this.rows * this.cellSize <= y) {
+            return -1;
+        }
+        if (x % this.cellSize != 0 || y % this.cellSize != 0) {
+            return -1;
         }
+        return this.getCell(point);
+    }
 
-        return points;
+    public Point getPoint(int cell) {
+        return this.points[cell];
+    }
+
+    public void setBlocked(int cell, boolean blocked) {
+        if (blocked) {
+            this.blocked[cell >>> 6] |= 1L << cell;
+        } else {
+            this.blocked[cell >>> 6] &= ~(1L << cell);
+        }
+    }
+
+    public boolean isBlocked(int cell) {
+        return (this.blocked[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean isBlockedAt(Point point) {
+        return this.containsPoint(point) && this.isBlocked(this.getCell(point));
     }
 
     public boolean containsPoint(Point point) {
@@ -68,244 +181,297 @@ public class Graph {
         return this.hasNodeAt(row, col);
     }
 
-    public Set<Point> getNeighbours(Point point) {
-        if (!this.containsPoint(point)) {
-            throw new IllegalArgumentException("The graph does not contain the given point");
+    /**
+     * Stores the ids of the cells adjacent to the given cell in the given array (of length at least 4),
+     * and returns how many there are.
+     */
+    public int getNeighbourCells(int cell, int[] neighbours) {
+        int mask = this.directions[cell];
+        int count = 0;
+
+        for (int d = 0; d < 4; d++) {
+            if ((mask & (1 << d)) == 0) continue;
+            int neighbour = cell + this.neighbourOffsets[d];
+            if (this.hasNodeAt(neighbour)) {
+                neighbours[count++] = neighbour;
+            }
         }
 
-        Set<Point> neighbours = new HashSet<>();
-        Point n1 = new Point(point.getX() + this.cellSize, point.getY());
-        Point n2 = new Point(point.getX(), point.getY() + this.cellSize);
-        Point n3 = new Point(point.getX() - this.cellSize, point.getY());
-        Point n4 = new Point(point.getX(), point.getY() - this.cellSize);
-        if (this.containsPoint(n1)) neighbours.add(n1);
-        if (this.containsPoint(n2)) neighbours.add(n2);
-        if (this.containsPoint(n3)) neighbours.add(n3);
-        if (this.containsPoint(n4)) neighbours.add(n4);
-        return neighbours;
+        return count;
     }
 
-    public Point getRandomPoint() {
-        int row, col;
-        do {
-            row = (int) Math.floor(Math.random() * this.rows);
-            col = (int) Math.floor(Math.random() * this.columns);
-        } while (!this.hasNodeAt(row, col));
-        return new Point(col * this.cellSize, row * this.cellSize);
+    /**
+     * Returns the label of the connected component of the given cell, or -1 if there is no node. Blocked nodes
+     * are part of their component, as they are only blocked for a while.
+     */
+    public int getComponent(int cell) {
+        if (this.componentVersion != this.version) {
+            this.updateComponents();
+        }
+        int label = this.components[cell];
+        return label < 0 ? -1 : this.findLabel(label);
     }
 
-    public Point getRandomPointSeeded(Random r) {
-        int row, col;
-        do {
-            row = r.nextInt(this.rows);
-            col = r.nextInt(this.columns);
-        } while (!this.hasNodeAt(row, col));
-        return new Point(col * this.cellSize, row * this.cellSize);
+    /**
+     * Returns whether there is a path between the two points when only walls are taken into account.
+     */
+    public boolean isConnected(Point from, Point to) {
+        if (!this.containsPoint(from) || !this.containsPoint(to)) {
+            return false;
+        }
+        int component = this.getComponent(this.getCell(from));
+        return component >= 0 && component == this.getComponent(this.getCell(to));
     }
 
-    public List<List<Point>> getMultiplePaths(Point from, Point to, int amount) {
-        List<List<Point>> listList = new ArrayList<>();
-        HashMap<Point, Double> penalties = new HashMap<>();
-        int numFails = 0;
-        int maxFails = 3;
-        double alpha = Math.random();
-
-        while (listList.size() < amount && numFails < maxFails) {
-            List<Point> p = getShortestPathWithPenalties(from, to, penalties);
-
-            if (listList.size() > 1) {
-                boolean existsAlready = false;
-                for (List<Point> list : listList) {
-                    if (Point.pathsEqual(list, p)) {
-                        existsAlready = true;
-                        break;
-                    }
-                }
-                if (existsAlready) {
-                    numFails += 1;
-                }
-                else {
-                    listList.add(p);
-                    numFails = 0;
-                }
-            }
-            else {
-                listList.add(p);
+    private void updateComponents() {
+        this.componentVersion = this.version;
+        Arrays.fill(this.components, -1);
+        this.labelCount = 0;
+
+        this.generation += 1;
+        for (int start = 0; start < this.components.length; start++) {
+            if (this.components[start] < 0 && this.hasNodeAt(start)) {
+                this.labelComponent(start, this.newLabel());
             }
+        }
+    }
 
-            for (Point point : p) {
-                double beta = Math.random();
-                if (beta < alpha) {
-                    penalties.put(point, this.PENALTY);
+    // gives every node that can be reached from the given one (and was not labelled before in the current
+    // generation) the given label
+    private void labelComponent(int start, int label) {
+        int generation = this.generation;
+        int head = 0;
+        int tail = 0;
+        this.queue[tail++] = start;
+        this.seen[start] = generation;
+        this.components[start] = label;
+
+        while (head < tail) {
+            int count = this.getNeighbourCells(this.queue[head++], this.neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = this.neighbours[i];
+                if (this.seen[neighbour] != generation) {
+                    this.seen[neighbour] = generation;
+                    this.components[neighbour] = label;
+                    this.queue[tail++] = neighbour;
                 }
             }
         }
-
-        return listList;
     }
 
-    public List<Point> getShortestPathWithPenalties(Point from, Point to, HashMap<Point, Double> penalties) {
-        if (!this.containsPoint(from) || !this.containsPoint(to)) {
-            throw new IllegalArgumentException("The graph does not contain both the given nodes");
+    // a wall was removed: the new node joins the components of its neighbours into one
+    private void joinComponents(int cell) {
+        int label = -1;
+        int count = this.getNeighbourCells(cell, this.neighbours);
+        for (int i = 0; i < count; i++) {
+            int root = this.findLabel(this.components[this.neighbours[i]]);
+            if (label < 0) {
+                label = root;
+            } else if (root != label) {
+                this.labelParents[root] = label;
+            }
         }
+        this.components[cell] = label < 0 ? this.newLabel() : label;
+    }
 
-        // A* Algorithm
-
-        class Vertex {
-            private Point point;
-            private double distance;
-            private Vertex previous;
-
-            private Vertex(Point point, double distance, Vertex previous) {
-                this.point = point;
-                this.distance = distance;
-                this.previous = previous;
-            }
+    // a wall was added: the component of the removed node may fall apart, so only that component is labelled again
+    private void splitComponent(int cell) {
+        this.components[cell] = -1;
+        int[] neighbours = new int[4];
+        int count = this.getNeighbourCells(cell, neighbours);
+        if (count <= 1) {
+            // removing a dead end or isolated node does not disconnect anything
+            return;
         }
 
-        Comparator<Vertex> comparator = (Vertex v1, Vertex v2)
-                -> (int) ((v1.distance + Point.distance(v1.point, to)) - (v2.distance + Point.distance(v2.point, to)));
-        PriorityQueue<Vertex> vertices = new PriorityQueue<>(32, comparator);
-        HashMap<Point, Vertex> mapping = new HashMap<>();
-        HashSet<Point> evaluated = new HashSet<>();
-        vertices.add(new Vertex(from, 0, null));
-        boolean found = false;
-        Vertex best = null;
-
-        while (vertices.size() > 0) {
-            best = vertices.poll();
-            Point point = best.point;
-            evaluated.add(point);
-
-            if (point.equals(to)) {
-                found = true;
-                break;
+        this.generation += 1;
+        for (int i = 0; i < count; i++) {
+            if (this.seen[neighbours[i]] != this.generation) {
+                this.labelComponent(neighbours[i], this.newLabel());
             }
+        }
+    }
 
-            Set<Point> neighbours = this.getNeighbours(point);
-            for (Point neighbour : neighbours) {
-                if (evaluated.contains(neighbour)) continue;
-                if (Main.simulation.getNodeAt(neighbour).isBlocked()) continue;
-
-                double distance = best.distance + Point.distance(point, neighbour);
+    private int newLabel() {
+        if (this.labelCount == this.labelParents.length) {
+            this.labelParents = Arrays.copyOf(this.labelParents, 2 * this.labelCount);
+        }
+        this.labelParents[this.labelCount] = this.labelCount;
+        return this.labelCount++;
+    }
 
-                // penalty added
-                if (penalties.keySet().contains(neighbour)) {
-                    distance += penalties.get(neighbour);
-                }
+    private int findLabel(int label) {
+        while (this.labelParents[label] != label) {
+            this.labelParents[label] = this.labelParents[this.labelParents[label]];
+            label = this.labelParents[label];
+        }
+        return label;
+    }
 
-                Vertex newVertex = new Vertex(neighbour, distance, best);
+    /**
+     * Returns the number of hops from one point to each of the given points, found with a single breadth-first
+     * search that stops as soon as all of them are reached or the cutoff (in hops) is passed.
+     * Only walls are taken into account. Points that are not reached get -1.
+     */
+    public int[] getDistances(Point from, List<Point> targets, int cutoff) {
+        int[] result = new int[targets.size()];
+        Arrays.fill(result, -1);
+        if (!this.containsPoint(from)) {
+            return result;
+        }
 
-                if (mapping.containsKey(neighbour)) {
-                    Vertex oldVertex = mapping.get(neighbour);
-                    if (distance < oldVertex.distance) {
-                        vertices.remove(oldVertex);
-                        vertices.add(newVertex);
-                        mapping.put(neighbour, newVertex);
-                    }
-                } else {
-                    vertices.add(newVertex);
-                    mapping.put(neighbour, newVertex);
-                }
+        this.generation += 1;
+        int generation = this.generation;
+
+        // the target cells are marked as evaluated, which the search itself does not use
+        int remaining = 0;
+        for (Point target : targets) {
+            if (!this.containsPoint(target)) continue;
+            int cell = this.getCell(target);
+            if (this.evaluated[cell] != generation) {
+                this.evaluated[cell] = generation;
+                remaining += 1;
             }
         }
 
-        if (!found) {
-            throw new IllegalArgumentException("There is no path between the given nodes in the graph");
+        int start = this.getCell(from);
+        int head = 0;
+        int tail = 0;
+        this.queue[tail++] = start;
+        this.seen[start] = generation;
+        this.hops[start] = 0;
+        if (this.evaluated[start] == generation) remaining -= 1;
+
+        while (head < tail && remaining > 0) {
+            int cell = this.queue[head++];
+            if (this.hops[cell] >= cutoff) break;
+
+            int count = this.getNeighbourCells(cell, this.neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = this.neighbours[i];
+                if (this.seen[neighbour] == generation) continue;
+                this.seen[neighbour] = generation;
+                this.hops[neighbour] = this.hops[cell] + 1;
+                this.queue[tail++] = neighbour;
+                if (this.evaluated[neighbour] == generation) remaining -= 1;
+            }
         }
 
-        ArrayList<Point> points = new ArrayList<>();
-        Vertex vertex = best;
-        while (vertex != null) {
-            points.add(vertex.point);
-            vertex = vertex.previous;
+        for (int i = 0; i < targets.size(); i++) {
+            Point target = targets.get(i);
+            if (!this.containsPoint(target)) continue;
+            int cell = this.getCell(target);
+            if (this.seen[cell] == generation) {
+                result[i] = this.hops[cell];
+            }
         }
-        Collections.reverse(points);
-        return points;
+        return result;
     }
 
-    public List<Point> getShortestPath(Point from, Point to) {
-        if (!this.containsPoint(from) || !this.containsPoint(to)) {
-            throw new IllegalArgumentException("The graph does not contain both the given nodes");
+    /**
+     * Searches for a shortest path, but expands at most the given number of nodes. Points that are not connected
+     * are rejected without searching. When the search runs out of expansions, the result holds the path to the
+     * node on its frontier closest to the goal, which is the best start of a path it has found.
+     */
+    public PathResult getShortestPath(Point from, Point to, int maxExpansions) {
+        if (!this.isConnected(from, to)) {
+            return new PathResult(PathResult.Status.UNREACHABLE, null, 0);
         }
 
-        // A* Algorithm
+        int target = this.getCell(to);
+        PathResult.Status status = this.search(this.getCell(from), target, maxExpansions);
+        if (status == PathResult.Status.UNREACHABLE) {
+            return new PathResult(status, null, this.expansions);
+        }
 
-        class Vertex {
-            private Point point;
-            private double distance;
-            private Vertex previous;
+        int end = status == PathResult.Status.FOUND ? target : this.closest;
+        return new PathResult(status, new Path(this.tracePath(end)), this.expansions);
+    }
 
-            private Vertex(Point point, double distance, Vertex previous) {
-                this.point = point;
-                this.distance = distance;
-                this.previous = previous;
-            }
+    // the cells of the path found by the last search, ending at the given cell
+    private int[] tracePath(int to) {
+        int length = 0;
+        for (int cell = to; cell >= 0; cell = this.previous[cell]) {
+            length += 1;
         }
 
-        Comparator<Vertex> comparator = (Vertex v1, Vertex v2)
-                -> (int) ((v1.distance + Point.distance(v1.point, to)) - (v2.distance + Point.distance(v2.point, to)));
-        PriorityQueue<Vertex> vertices = new PriorityQueue<>(32, comparator);
-        HashMap<Point, Vertex> mapping = new HashMap<>();
-        HashSet<Point> evaluated = new HashSet<>();
-        vertices.add(new Vertex(from, 0, null));
-        boolean found = false;
-        Vertex best = null;
-
-        while (vertices.size() > 0) {
-            best = vertices.poll();
-            Point point = best.point;
-            evaluated.add(point);
-
-            if (point.equals(to)) {
-                found = true;
-                break;
+        int[] cells = new int[length];
+        for (int cell = to; cell >= 0; cell = this.previous[cell]) {
+            cells[--length] = cell;
+        }
+        return cells;
+    }
+
+    // A* Algorithm over cell ids, reusing the search arrays of this graph.
+    // Keeps track of the discovered cell closest to the goal, for when it runs out of expansions.
+    private PathResult.Status search(int from, int to, int maxExpansions) {
+        this.generation += 1;
+        int generation = this.generation;
+        IndexedHeap open = this.open;
+        open.clear();
+
+        int toRow = to / this.columns;
+        int toCol = to % this.columns;
+
+        this.distances[from] = 0;
+        this.previous[from] = -1;
+        this.seen[from] = generation;
+        open.add(from, this.heuristic(from, toRow, toCol));
+        this.closest = from;
+        this.expansions = 0;
+
+        while (!open.isEmpty()) {
+            if (this.expansions >= maxExpansions) {
+                return PathResult.Status.OVER_BUDGET;
             }
 
-            Set<Point> neighbours = this.getNeighbours(point);
-            for (Point neighbour : neighbours) {
-                if (evaluated.contains(neighbour)) continue;
-                if (Main.simulation.getNodeAt(neighbour).isBlocked()) continue;
+            int cell = open.poll();
+            this.evaluated[cell] = generation;
+            this.expansions += 1;
 
-                double distance = best.distance + Point.distance(point, neighbour);
-                Vertex newVertex = new Vertex(neighbour, distance, best);
+            if (cell == to) {
+                return PathResult.Status.FOUND;
+            }
 
-                if (mapping.containsKey(neighbour)) {
-                    Vertex oldVertex = mapping.get(neighbour);
-                    if (distance < oldVertex.distance) {
-                        vertices.remove(oldVertex);
-                        vertices.add(newVertex);
-                        mapping.put(neighbour, newVertex);
+            int count = this.getNeighbourCells(cell, this.neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = this.neighbours[i];
+                if (this.evaluated[neighbour] == generation) continue;
+                if (this.isBlocked(neighbour)) continue;
+
+                double distance = this.distances[cell] + this.cellSize;
+
+                if (this.seen[neighbour] != generation) {
+                    this.seen[neighbour] = generation;
+                    this.distances[neighbour] = distance;
+                    this.previous[neighbour] = cell;
+                    open.add(neighbour, distance + this.heuristic(neighbour, toRow, toCol));
+                    if (this.heuristic(neighbour, toRow, toCol) < this.heuristic(this.closest, toRow, toCol)) {
+                        this.closest = neighbour;
                     }
-                } else {
-                    vertices.add(newVertex);
-                    mapping.put(neighbour, newVertex);
+                } else if (distance < this.distances[neighbour]) {
+                    this.distances[neighbour] = distance;
+                    this.previous[neighbour] = cell;
+                    open.decreaseKey(neighbour, distance + this.heuristic(neighbour, toRow, toCol));
                 }
             }
         }
 
-        if (!found) {
-            throw new IllegalArgumentException("There is no path between the given nodes in the graph");
-        }
+        return PathResult.Status.UNREACHABLE;
+    }
 
-        ArrayList<Point> points = new ArrayList<>();
-        Vertex vertex = best;
-        while (vertex != null) {
-            points.add(vertex.point);
-            vertex = vertex.previous;
-        }
-        Collections.reverse(points);
-        return points;
+    private double heuristic(int cell, int toRow, int toCol) {
+        int dx = (cell % this.columns - toCol) * this.cellSize;
+        int dy = (cell / this.columns - toRow) * this.cellSize;
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     public Graph copy() {
         Graph graph = new Graph(this.rows, this.columns, this.cellSize);
 
-        for (int col = 0; col < this.columns; col++) {
-            for (int row = 0; row < this.rows; row++) {
-                graph.setNodeAt(row, col, this.hasNodeAt(row, col));
-            }
-        }
+        System.arraycopy(this.nodes, 0, graph.nodes, 0, this.nodes.length);
+        System.arraycopy(this.blocked, 0, graph.blocked, 0, this.blocked.length);
+        graph.version = this.version;
 
         return graph;
     }
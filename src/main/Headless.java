@@ -0,0 +1,149 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Runs a single simulation without a window, as fast as possible, and prints its results.
+ *
+ * Usage: java -cp out main.Headless [--map warehouse.mpm] [--agent simple|naive|complex] [--parcels 100]
+ *        [--window 15000] [--battery 200] [--charging 1] [--simple-count 1] [--seed 1] [--mode tick|event]
+ *        [--dispatch local|central] [--budget n] [--max-ticks n]
+ */
+public class Headless {
+
+    public static void main(String[] args) {
+        String map = "warehouse.mpm";
+        Settings settings = new Settings();
+        int maxTicks = -1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+
+                switch (option) {
+                    case "--map":
+                        map = value;
+                        break;
+                    case "--agent":
+                        settings.agentType = parseAgentType(value);
+                        break;
+                    case "--parcels":
+                        settings.parcelAmount = Integer.parseInt(value);
+                        break;
+                    case "--window":
+                        settings.arrivalWindow = Integer.parseInt(value);
+                        break;
+                    case "--battery":
+                        settings.batteryCapacity = Integer.parseInt(value);
+                        break;
+                    case "--charging":
+                        settings.chargingMultiplier = Integer.parseInt(value);
+                        break;
+                    case "--simple-count":
+                        settings.simpleDeliveryCount = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        settings.seed = Long.parseLong(value);
+                        break;
+                    case "--mode":
+                        settings.eventDriven = parseMode(value);
+                        break;
+                    case "--dispatch":
+                        settings.centralDispatch = parseDispatch(value);
+                        break;
+                    case "--budget":
+                        settings.planningBudget = Integer.parseInt(value);
+                        break;
+                    case "--max-ticks":
+                        maxTicks = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: main.Headless [--map file.mpm] [--agent simple|naive|complex] [--parcels n] [--window n]"
+                    + " [--battery n] [--charging n] [--simple-count n] [--seed n] [--mode tick|event]"
+                    + " [--dispatch local|central] [--budget n] [--max-ticks n]");
+            System.exit(1);
+            return;
+        }
+
+        String contents;
+        try {
+            contents = readMap(map);
+        } catch (IOException e) {
+            System.err.println("Could not read map " + map + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Simulation simulation = run(contents, settings, maxTicks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Tracker tracker = simulation.getTracker();
+        System.out.println("map:              " + map);
+        System.out.println("agent type:       " + settings.agentType);
+        System.out.println("ticks:            " + simulation.getPassedTime());
+        System.out.println("delivered:        " + tracker.getDelivered() + " / " + simulation.getParcelAmount());
+        System.out.println("on time:          " + tracker.getOnTime());
+        System.out.println("late:             " + tracker.getTooLate());
+        System.out.println("average lateness: " + tracker.getAverageLateness());
+        System.out.println("times charged:    " + tracker.getTimesCharged());
+        System.out.println("ticks per second: " + (seconds == 0 ? 0 : (long) (simulation.getPassedTime() / seconds)));
+    }
+
+    public static String parseAgentType(String value) {
+        if (!value.equals("simple") && !value.equals("naive") && !value.equals("complex")) {
+            throw new IllegalArgumentException("Unknown agent type: " + value);
+        }
+        return value;
+    }
+
+    public static boolean parseMode(String value) {
+        if (!value.equals("tick") && !value.equals("event")) {
+            throw new IllegalArgumentException("Unknown mode: " + value);
+        }
+        return value.equals("event");
+    }
+
+    public static boolean parseDispatch(String value) {
+        if (!value.equals("local") && !value.equals("central")) {
+            throw new IllegalArgumentException("Unknown dispatch: " + value);
+        }
+        return value.equals("central");
+    }
+
+    public static String readMap(String filename) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs a new simulation of the given map until every parcel is delivered or the tick limit is reached.
+     * A negative limit leaves enough time for the last parcel to arrive and to be delivered way past its deadline.
+     */
+    public static Simulation run(String map, Settings settings, int maxTicks) {
+        if (maxTicks < 0) {
+            maxTicks = 100 + 2 * settings.arrivalWindow + 50000;
+        }
+
+        Simulation simulation = new Simulation(new Graph(Main.gridHeight, Main.gridWidth, Main.cellSize), settings);
+        simulation.loadMap(map);
+        simulation.setupParcelEvents();
+
+        while (simulation.getParcelsDelivered() < simulation.getParcelAmount() && simulation.getPassedTime() < maxTicks) {
+            simulation.simulate(maxTicks);
+        }
+
+        return simulation;
+    }
+}
@@ -0,0 +1,96 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * The Hungarian algorithm (with potentials) for the rectangular assignment problem: every row is assigned a different
+ * column, or every column a different row if there are fewer columns, such that the total cost is minimal.
+ * Runs in O(n^2 m) for n rows and m columns with n <= m.
+ */
+public class Hungarian {
+
+    /**
+     * Returns the column assigned to every row, or -1 for the rows that are left unassigned.
+     */
+    public static int[] solve(double[][] costs) {
+        int rows = costs.length;
+        int columns = rows == 0 ? 0 : costs[0].length;
+
+        if (rows <= columns) {
+            return solve(costs, rows, columns, false);
+        }
+
+        // assign the columns to rows instead
+        int[] columnRows = solve(costs, columns, rows, true);
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        for (int column = 0; column < columns; column++) {
+            assignment[columnRows[column]] = column;
+        }
+        return assignment;
+    }
+
+    private static int[] solve(double[][] costs, int n, int m, boolean transposed) {
+        // 1-based, index 0 is the virtual starting column
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] match = new int[m + 1];   // the row matched to every column
+        int[] way = new int[m + 1];
+        double[] minima = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int row = 1; row <= n; row++) {
+            match[0] = row;
+            int column = 0;
+            Arrays.fill(minima, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+
+            do {
+                used[column] = true;
+                int current = match[column];
+                double delta = Double.POSITIVE_INFINITY;
+                int next = 0;
+
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) continue;
+                    double cost = transposed ? costs[j - 1][current - 1] : costs[current - 1][j - 1];
+                    double reduced = cost - u[current] - v[j];
+                    if (reduced < minima[j]) {
+                        minima[j] = reduced;
+                        way[j] = column;
+                    }
+                    if (minima[j] < delta) {
+                        delta = minima[j];
+                        next = j;
+                    }
+                }
+
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minima[j] -= delta;
+                    }
+                }
+                column = next;
+            } while (match[column] != 0);
+
+            // augment along the alternating path
+            do {
+                int previous = way[column];
+                match[column] = match[previous];
+                column = previous;
+            } while (column != 0);
+        }
+
+        int[] assignment = new int[n];
+        Arrays.fill(assignment, -1);
+        for (int j = 1; j <= m; j++) {
+            if (match[j] != 0) {
+                assignment[match[j] - 1] = j - 1;
+            }
+        }
+        return assignment;
+    }
+}
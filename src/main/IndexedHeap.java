@@ -0,0 +1,119 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over the integers 0 .. capacity-1, keyed by a double.
+ * Every id knows its slot in the heap, so a key can be decreased in O(log n) instead of removing and re-adding.
+ */
+public class IndexedHeap {
+
+    private int[] heap;
+    private int[] slot;
+    private double[] keys;
+    private int size = 0;
+
+    public IndexedHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.slot = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(this.slot, -1);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(int id) {
+        return this.slot[id] >= 0;
+    }
+
+    public double getKey(int id) {
+        return this.keys[id];
+    }
+
+    public void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.slot[this.heap[i]] = -1;
+        }
+        this.size = 0;
+    }
+
+    public void add(int id, double key) {
+        this.keys[id] = key;
+        this.heap[this.size] = id;
+        this.slot[id] = this.size;
+        this.size += 1;
+        this.siftUp(this.size - 1);
+    }
+
+    public void decreaseKey(int id, double key) {
+        this.keys[id] = key;
+        this.siftUp(this.slot[id]);
+    }
+
+    public int peek() {
+        return this.heap[0];
+    }
+
+    public int poll() {
+        int top = this.heap[0];
+        this.size -= 1;
+        this.slot[top] = -1;
+
+        if (this.size > 0) {
+            int last = this.heap[this.size];
+            this.heap[0] = last;
+            this.slot[last] = 0;
+            this.siftDown(0);
+        }
+
+        return top;
+    }
+
+    private boolean less(int i, int j) {
+        double ki = this.keys[this.heap[i]];
+        double kj = this.keys[this.heap[j]];
+        if (ki != kj) {
+            return ki < kj;
+        }
+        return this.heap[i] < this.heap[j];
+    }
+
+    private void swap(int i, int j) {
+        int a = this.heap[i];
+        int b = this.heap[j];
+        this.heap[i] = b;
+        this.heap[j] = a;
+        this.slot[b] = i;
+        this.slot[a] = j;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!this.less(i, parent)) break;
+            this.swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= this.size) break;
+            int smallest = left;
+            int right = left + 1;
+            if (right < this.size && this.less(right, left)) {
+                smallest = right;
+            }
+            if (!this.less(smallest, i)) break;
+            this.swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
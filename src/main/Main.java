@@ -25,17 +25,11 @@ public class Main {
     public static int gridWidth = 23; //26;
     public static int gridHeight = 16; //19;
 
-    public static int timesCharged = 0;
-    public static int nbOnTime = 0;
-    public static int nbTooLate = 0;
-    public static int avgLateness = 0;
-
     public static int scenarioNumber = -1;  // -1 if no automatic scenario
 
     public static void setupSimulation() {
         // only if scenario number < 0
 
-        Tracker.init();
         loadMap("warehouse.mpm");
         //simulation.setupParcelEvents();
     }
@@ -88,16 +82,7 @@ public class Main {
     }
 
     public static Agent createAgent(int x, int y) {
-        switch (AGENT_TYPE) {
-            case "simple":
-                return new AgentSimple(x, y);
-            case "naive":
-                return new AgentNaive(x, y);
-            case "complex":
-                return new AgentComplex(x, y);
-        }
-
-        return null;
+        return simulation.createAgent(x, y);
     }
 
     public static boolean flag = false;
@@ -123,24 +108,25 @@ public class Main {
         }
 
         setMapContents(contents, true);
-
-        nbOnTime = 0;
-        nbTooLate = 0;
-        avgLateness = 0;
         updateStats();
     }
 
     public static void updateStats() {
-        int totalDelivered = nbOnTime + nbTooLate;
+        if (window == null) {
+            return;
+        }
+
+        Tracker tracker = simulation.getTracker();
+        int totalDelivered = tracker.getOnTime() + tracker.getTooLate();
 
         window.labelValStat1.setText("" + totalDelivered);
-        window.labelValStat2.setText("" + nbOnTime);
-        window.labelValStat3.setText("" + nbTooLate);
+        window.labelValStat2.setText("" + tracker.getOnTime());
+        window.labelValStat3.setText("" + tracker.getTooLate());
 
         if (totalDelivered == 0) {
             window.labelValStat4.setText("0");
         } else {
-            window.labelValStat4.setText("" + (Math.floor(avgLateness / totalDelivered * 100) / 100));
+            window.labelValStat4.setText("" + (Math.floor(tracker.getTotalLateness() / totalDelivered * 100) / 100));
         }
     }
 
@@ -335,35 +321,7 @@ public class Main {
             done = true;
         }
 
-        String[] lines = contents.split("\n");
-
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            if (line.equals("")) continue;
-            String[] tokens = line.split(" ");
-
-            String name = tokens[0];
-            int x = Integer.parseInt(tokens[1]);
-            int y = Integer.parseInt(tokens[2].trim());
-
-            switch (name) {
-                case "wall":
-                    simulation.getGraph().setNodeAt(x, y, false);
-                    break;
-
-                case "battery":
-                    simulation.register(new BatteryStation(x, y));
-                    break;
-
-                case "delivery":
-                    simulation.register(new DeliveryLocation(x, y));
-                    break;
-
-                case "agent":
-                    simulation.register(createAgent(x, y));
-                    break;
-            }
-        }
+        simulation.loadMap(contents);
 
         if (done) {
             //simulation.setupParcelEvents();
@@ -1,6 +1,7 @@
 package main;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Node extends SimulationObject {
@@ -8,9 +9,13 @@ public class Node extends SimulationObject {
     private Simulation simulation;
     private Graph graph;
 
-    private List<Reservation> reservations = new ArrayList<>();
-    private boolean blocked = false;
-    private int intervalTimer = 0;
+    // reservations sorted by start time; the ones that started more than "longest" ticks ago are over and get evicted on insertion,
+    // cancelled ones stay in place until the array is full
+    private Reservation[] reservations = new Reservation[4];
+    private int size = 0;
+    private int longest = 0;
+    private int cell;
+    private ReservationTable table;
 
     public Node(int x, int y) {
         super(x, y);
@@ -20,54 +25,155 @@ public class Node extends SimulationObject {
     public void init(Simulation simulation, Graph graph) {
         this.simulation = simulation;
         this.graph = graph;
+        this.cell = graph.getCell(this.position);
+        this.table = simulation.getReservationTable();
     }
 
     @Override
     public void tick() {
-        this.intervalTimer += 1;
-
-        if (this.intervalTimer > 60) {
-            this.intervalTimer = 0;
-
-            List<Reservation> newReservations = new ArrayList<>();
-            for (Reservation r : this.reservations) {
-                if (r.getEndTime() >= this.simulation.getPassedTime()) {
-                    newReservations.add(r);
-                }
-            }
-            this.reservations = newReservations;
-        }
+        // does nothing
     }
 
+    // whether an agent is on the node is kept by the graph only
     public void setBlocked(boolean blocked) {
-        this.blocked = blocked;
+        this.graph.setBlocked(this.cell, blocked);
     }
 
     public boolean isBlocked() {
-        return this.blocked;
+        return this.graph.isBlocked(this.cell);
     }
 
     public boolean isReserved(int start, int end) {
-        for (Reservation reservation : this.reservations) {
-            if (start < reservation.getEndTime() && reservation.getStartTime() < end) {
+        return this.isReserved(start, end, null);
+    }
+
+    /**
+     * Checks whether the node is reserved in the given time interval by any agent other than the given one.
+     */
+    public boolean isReserved(int start, int end, Agent ignored) {
+        if (!this.table.mightBeReserved(this.cell, start, end)) {
+            return false;
+        }
+
+        // only reservations that start before the end of the interval, and not too long before its start, can overlap
+        for (int i = this.indexAfter(end - 1) - 1; i >= 0; i--) {
+            Reservation reservation = this.reservations[i];
+            if (reservation.getStartTime() + this.longest <= start) break;
+            if (reservation.getAgent() == ignored || reservation.isCancelled()) continue;
+            if (start < reservation.getEndTime()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an agent other than the given one enters this node from the given cell in the given interval.
+     * Moving to that cell from here in the same interval would swap places with it.
+     */
+    public boolean isEnteredFrom(int fromCell, int start, int end, Agent ignored) {
+        if (!this.table.mightBeReserved(this.cell, start, end)) {
+            return false;
+        }
+
+        for (int i = this.indexAfter(end - 1) - 1; i >= 0; i--) {
+            Reservation reservation = this.reservations[i];
+            if (reservation.getStartTime() + this.longest <= start) break;
+            if (reservation.getAgent() == ignored || reservation.isCancelled()) continue;
+            if (start < reservation.getEndTime() && reservation.getFromCell() == fromCell) {
                 return true;
             }
         }
         return false;
     }
 
-    public void reserve(Agent agent, int start, int end) {
-        this.reservations.add(new Reservation(start, end, agent));
+    public Reservation reserve(Agent agent, int start, int end) {
+        return this.reserve(agent, start, end, -1);
+    }
+
+    /**
+     * Reserves the node for the given agent, which enters it from the given cell, and returns the reservation,
+     * through which the agent can cancel it.
+     */
+    public Reservation reserve(Agent agent, int start, int end, int fromCell) {
+        this.evictExpired();
+
+        if (this.size == this.reservations.length) {
+            this.removeCancelled();
+            if (this.size == this.reservations.length) {
+                this.reservations = Arrays.copyOf(this.reservations, 2 * this.size);
+            }
+        }
+
+        Reservation reservation = new Reservation(start, end, agent, this, fromCell);
+        int index = this.indexAfter(start);
+        System.arraycopy(this.reservations, index, this.reservations, index + 1, this.size - index);
+        this.reservations[index] = reservation;
+        this.size += 1;
+        this.longest = Math.max(this.longest, end - start);
+        this.table.add(this.cell, reservation);
+        return reservation;
+    }
+
+    // called by the reservation itself once it is marked as cancelled
+    void cancel(Reservation cancelled) {
+        this.table.remove(this.cell, cancelled);
+    }
+
+    // called by the reservation itself; the start time and so the order of the reservations stays the same
+    void truncate(Reservation reservation, int time) {
+        this.table.remove(this.cell, reservation);
+        reservation.setEndTime(time);
+        this.table.add(this.cell, reservation);
+    }
+
+    /**
+     * Returns the agents with a reservation that has not ended before the given time, each once.
+     */
+    public List<Agent> getAgentsReservedFrom(int time) {
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < this.size; i++) {
+            Reservation reservation = this.reservations[i];
+            if (reservation.getEndTime() > time && !reservation.isCancelled() && !agents.contains(reservation.getAgent())) {
+                agents.add(reservation.getAgent());
+            }
+        }
+        return agents;
     }
 
-    public void cancelReservationsFor(Agent agent) {
-        List<Reservation> newReservations = new ArrayList<>();
-        for (Reservation r : this.reservations) {
-            if (r.getAgent() != agent) {
-                newReservations.add(r);
+    // index of the first reservation that starts after the given time
+    private int indexAfter(int time) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.reservations[mid].getStartTime() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        this.reservations = newReservations;
+        return low;
+    }
+
+    private void removeCancelled() {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (!this.reservations[i].isCancelled()) {
+                this.reservations[kept++] = this.reservations[i];
+            }
+        }
+        Arrays.fill(this.reservations, kept, this.size, null);
+        this.size = kept;
+    }
+
+    private void evictExpired() {
+        int expired = this.indexAfter(this.simulation.getPassedTime() - this.longest - 1);
+        if (expired == 0) return;
+
+        System.arraycopy(this.reservations, expired, this.reservations, 0, this.size - expired);
+        Arrays.fill(this.reservations, this.size - expired, this.size, null);
+        this.size -= expired;
     }
 
     @Override
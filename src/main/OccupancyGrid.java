@@ -0,0 +1,210 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Keeps track of which agent, parcels, battery station and delivery location are located exactly on each cell of
+ * the graph, and of the cells that are free (a node without agent, battery station or delivery location).
+ */
+public class OccupancyGrid {
+
+    private Graph graph;
+
+    private Agent[] agents;
+    private Parcel[] parcels;  // first parcel per cell, the others are chained through Parcel.nextInCell
+    private BatteryStation[] batteryStations;
+    private DeliveryLocation[] deliveryLocations;
+
+    // free cells in no particular order, and the index of every cell in that list (-1 if not free)
+    private int[] freeCells;
+    private int[] freeIndices;
+    private int freeCount = 0;
+    private int version = -1;
+
+    public OccupancyGrid(Graph graph) {
+        this.graph = graph;
+
+        int cells = graph.getWidth() * graph.getHeight();
+        this.agents = new Agent[cells];
+        this.parcels = new Parcel[cells];
+        this.batteryStations = new BatteryStation[cells];
+        this.deliveryLocations = new DeliveryLocation[cells];
+        this.freeCells = new int[cells];
+        this.freeIndices = new int[cells];
+    }
+
+    public void add(SimulationObject object) {
+        this.add(object, object.getPosition());
+    }
+
+    public void remove(SimulationObject object) {
+        this.remove(object, object.getPosition());
+    }
+
+    public void move(SimulationObject object, Point from, Point to) {
+        this.remove(object, from);
+        this.add(object, to);
+    }
+
+    public Agent getAgentAt(Point point) {
+        int cell = this.graph.findCell(point);
+        return cell < 0 ? null : this.agents[cell];
+    }
+
+    public Parcel getParcelAt(Point point) {
+        int cell = this.graph.findCell(point);
+        return cell < 0 ? null : this.parcels[cell];
+    }
+
+    public BatteryStation getBatteryStationAt(Point point) {
+        int cell = this.graph.findCell(point);
+        return cell < 0 ? null : this.batteryStations[cell];
+    }
+
+    public DeliveryLocation getDeliveryLocationAt(Point point) {
+        int cell = this.graph.findCell(point);
+        return cell < 0 ? null : this.deliveryLocations[cell];
+    }
+
+    public boolean isFree(int cell) {
+        return this.graph.hasNodeAt(cell) && this.agents[cell] == null
+                && this.batteryStations[cell] == null && this.deliveryLocations[cell] == null;
+    }
+
+    /**
+     * Returns a uniformly chosen free cell, or -1 if there is none.
+     */
+    public int getRandomFreeCell(Random random) {
+        this.update();
+        if (this.freeCount == 0) {
+            return -1;
+        }
+        return this.freeCells[random.nextInt(this.freeCount)];
+    }
+
+    /**
+     * Returns a uniformly chosen free cell in the given connected component of the graph, or -1 if there is none.
+     */
+    public int getRandomFreeCell(Random random, int component) {
+        this.update();
+
+        // usually the graph is connected, and the first free cell is in the component
+        for (int i = 0; i < 8 && this.freeCount > 0; i++) {
+            int cell = this.freeCells[random.nextInt(this.freeCount)];
+            if (this.graph.getComponent(cell) == component) {
+                return cell;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < this.freeCount; i++) {
+            if (this.graph.getComponent(this.freeCells[i]) == component) count += 1;
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        int index = random.nextInt(count);
+        for (int i = 0; i < this.freeCount; i++) {
+            int cell = this.freeCells[i];
+            if (this.graph.getComponent(cell) == component && index-- == 0) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    private void add(SimulationObject object, Point point) {
+        int cell = this.graph.findCell(point);
+        if (cell < 0) return;
+
+        if (object instanceof Agent) {
+            this.agents[cell] = (Agent) object;
+        } else if (object instanceof Parcel) {
+            Parcel parcel = (Parcel) object;
+            parcel.nextInCell = this.parcels[cell];
+            this.parcels[cell] = parcel;
+        } else if (object instanceof BatteryStation) {
+            this.batteryStations[cell] = (BatteryStation) object;
+        } else if (object instanceof DeliveryLocation) {
+            this.deliveryLocations[cell] = (DeliveryLocation) object;
+        } else {
+            return;
+        }
+
+        this.updateFree(cell);
+    }
+
+    private void remove(SimulationObject object, Point point) {
+        int cell = this.graph.findCell(point);
+        if (cell < 0) return;
+
+        if (object instanceof Agent) {
+            if (this.agents[cell] == object) this.agents[cell] = null;
+        } else if (object instanceof Parcel) {
+            Parcel previous = null;
+            for (Parcel parcel = this.parcels[cell]; parcel != null; parcel = parcel.nextInCell) {
+                if (parcel == object) {
+                    if (previous == null) {
+                        this.parcels[cell] = parcel.nextInCell;
+                    } else {
+                        previous.nextInCell = parcel.nextInCell;
+                    }
+                    parcel.nextInCell = null;
+                    break;
+                }
+                previous = parcel;
+            }
+        } else if (object instanceof BatteryStation) {
+            if (this.batteryStations[cell] == object) this.batteryStations[cell] = null;
+        } else if (object instanceof DeliveryLocation) {
+            if (this.deliveryLocations[cell] == object) this.deliveryLocations[cell] = null;
+        } else {
+            return;
+        }
+
+        this.updateFree(cell);
+    }
+
+    private void updateFree(int cell) {
+        if (this.version != this.graph.getVersion()) {
+            // rebuilt completely on the next sample
+            return;
+        }
+
+        boolean free = this.isFree(cell);
+        int index = this.freeIndices[cell];
+
+        if (free && index < 0) {
+            this.freeIndices[cell] = this.freeCount;
+            this.freeCells[this.freeCount] = cell;
+            this.freeCount += 1;
+        } else if (!free && index >= 0) {
+            // move the last free cell into the gap
+            this.freeCount -= 1;
+            int last = this.freeCells[this.freeCount];
+            this.freeCells[index] = last;
+            this.freeIndices[last] = index;
+            this.freeIndices[cell] = -1;
+        }
+    }
+
+    // rebuilds the free cells after the graph has changed
+    private void update() {
+        if (this.version == this.graph.getVersion()) {
+            return;
+        }
+        this.version = this.graph.getVersion();
+
+        Arrays.fill(this.freeIndices, -1);
+        this.freeCount = 0;
+        for (int cell = 0; cell < this.freeCells.length; cell++) {
+            if (this.isFree(cell)) {
+                this.freeIndices[cell] = this.freeCount;
+                this.freeCells[this.freeCount] = cell;
+                this.freeCount += 1;
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package main;
 
-import java.util.List;
 import java.util.Random;
 
 public class Parcel extends SimulationObject  {
@@ -16,13 +15,36 @@ public class Parcel extends SimulationObject  {
     private int currentDeliveryTime = Integer.MAX_VALUE;
     private boolean beingTransported = false;
 
+    // next parcel on the same cell, maintained by the OccupancyGrid of the simulation
+    Parcel nextInCell = null;
+
+    // the delivery leg: a shortest path (ignoring agents) to the delivery location and the distance from there to the
+    // closest battery station, computed when first needed and again after invalidation or a change of the graph
+    private Path deliveryPath = null;
+    private int chargerDistance = -1;
+    private boolean legValid = false;
+    private int legVersion = -1;
+
+    // bucket of the ParcelIndex of the simulation this parcel is in, -1 if it is not waiting
+    int indexBucket = -1;
+    boolean indexUnreserved = false;
+
     public Parcel(Point from, Point to, int arrivalTime) {
         super(from.getX(), from.getY());
         this.startLocation = from;
         this.deliveryLocation = to;
         this.arrivalTime = arrivalTime;
+    }
 
-        deadline = determineDeadline(from, to, arrivalTime);
+    @Override
+    public void setPosition(Point position) {
+        Point previous = this.position;
+        super.setPosition(position);
+        if (this.simulation != null) {
+            this.invalidateDeliveryLeg();
+            this.simulation.objectMoved(this, previous);
+            this.simulation.wake(this);
+        }
     }
 
     public int getCurrentDeliveryTime(){
@@ -35,8 +57,8 @@ public class Parcel extends SimulationObject  {
         int transportTime = deltaX + deltaY;
 
         //margin determined by the max length
-        Random r = new Random();
-        int margin = (int) ((Main.gridWidth + Main.gridHeight)*Main.cellSize* (r.nextDouble()*2.0+2.0));
+        Random r = this.simulation.getRandom();
+        int margin = (int) ((this.graph.getWidth() + this.graph.getHeight())*this.graph.getCellSize()* (r.nextDouble()*2.0+2.0));
 
         return arrivalTime + transportTime + margin;
     }
@@ -46,15 +68,17 @@ public class Parcel extends SimulationObject  {
         this.simulation = simulation;
         this.graph = graph;
 
-        List<DeliveryLocation> locs = this.simulation.getDeliveryLocations();
-        int index = (int) (Math.random() * locs.size());
-        DeliveryLocation loc = locs.get(index);
-        this.deliveryLocation = loc.getPosition();
+        deadline = determineDeadline(this.startLocation, this.deliveryLocation, this.arrivalTime);
     }
 
+    /**
+     * Removes the parcel once it is left behind, not reserved, on its own delivery location. Parcels dropped on
+     * another delivery location stay there to be picked up again. Only free and setPosition can leave a parcel
+     * behind, and both wake it up, so it never has to tick on its own.
+     */
     @Override
     public void tick() {
-        if(this.reservedAgent == null && this.simulation.getDeliveryLocationAt(this.getPosition())!= null){
+        if(this.reservedAgent == null && this.getPosition().equals(this.deliveryLocation)){
             this.simulation.unregister(this);
             this.free();
         }
@@ -72,12 +96,57 @@ public class Parcel extends SimulationObject  {
         return this.deliveryLocation;
     }
 
+    /**
+     * Returns a shortest path (including both end points, not taking agents into account) from the parcel to its
+     * delivery location, or null if there is none. The path is shared and must not be modified.
+     */
+    public Path getDeliveryPath() {
+        this.updateDeliveryLeg();
+        return this.deliveryPath;
+    }
+
+    /**
+     * Returns the number of hops from the parcel to its delivery location, or -1 if it can not be reached.
+     */
+    public int getDeliveryLegLength() {
+        this.updateDeliveryLeg();
+        return this.deliveryPath == null ? -1 : this.deliveryPath.size() - 1;
+    }
+
+    /**
+     * Returns the distance from the delivery location to the closest battery station, as given by
+     * Agent.getDistanceToClosestBatteryStation.
+     */
+    public int getChargerDistance() {
+        this.updateDeliveryLeg();
+        return this.chargerDistance;
+    }
+
+    public void invalidateDeliveryLeg() {
+        this.legValid = false;
+    }
+
+    private void updateDeliveryLeg() {
+        if (this.legValid && this.legVersion == this.graph.getVersion()) {
+            return;
+        }
+        this.legValid = true;
+        this.legVersion = this.graph.getVersion();
+
+        this.deliveryPath = this.simulation.getDistanceField(this.deliveryLocation).getPath(this.getPosition());
+        int hops = this.simulation.getBatteryStationField().getDistance(this.deliveryLocation);
+        this.chargerDistance = hops < 0 ? -1 : hops + 1;
+    }
+
     public boolean isBeingTransported(){
         return beingTransported;
     }
 
     public void setBeingTransported(boolean beingTransported){
         this.beingTransported = beingTransported;
+        if (this.simulation != null) {
+            this.simulation.parcelChanged(this);
+        }
     }
 
     public boolean isReserved() {
@@ -85,19 +154,33 @@ public class Parcel extends SimulationObject  {
     }
 
     public void reserve(Agent agent, int deliveryTime) {
-        if (this.reservedAgent != null) {
-            this.reservedAgent.cancelParcelTask();
+        Agent previous = this.reservedAgent;
+        if (previous != null) {
+            // not announced as freed, as it is taken right away
+            this.reservedAgent = null;
+            previous.cancelParcelTask();
+            this.simulation.getChangeBus().publish(previous, ChangeBus.PARCEL_TAKEN);
         }
 
         this.reservedAgent = agent;
         this.currentDeliveryTime = deliveryTime;
+        if (this.simulation != null) {
+            this.simulation.parcelChanged(this);
+        }
         //this.reservationScore = heuristic(deliveryTime);
     }
 
     public void free() {
+        if (this.reservedAgent != null && this.simulation.contains(this) && !this.beingTransported) {
+            this.simulation.getChangeBus().publish(ChangeBus.PARCEL_FREED);
+        }
         this.reservedAgent = null;
         //this.reservationScore = Integer.MIN_VALUE;
         this.currentDeliveryTime = Integer.MAX_VALUE;
+        if (this.simulation != null) {
+            this.simulation.parcelChanged(this);
+            this.simulation.wake(this);
+        }
     }
 
     public Point getStartLocation(){
@@ -0,0 +1,154 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The parcels waiting to be picked up, bucketed by position. A search visits them in order of a lower bound on the
+ * number of hops needed to pick them up from a given point and deliver them: the Manhattan distance to the parcel
+ * plus the length of its delivery leg.
+ */
+public class ParcelIndex {
+
+    private Graph graph;
+    private int bucketSize;
+    private int bucketRows;
+    private int bucketColumns;
+    private List<List<Parcel>> buckets = new ArrayList<>();
+    private int unreserved = 0;  // the number of parcels in the index that are not reserved by an agent
+
+    public ParcelIndex(Graph graph, int bucketSize) {
+        this.graph = graph;
+        this.bucketSize = bucketSize;
+        this.bucketRows = (graph.getHeight() + bucketSize - 1) / bucketSize;
+        this.bucketColumns = (graph.getWidth() + bucketSize - 1) / bucketSize;
+        for (int i = 0; i < this.bucketRows * this.bucketColumns; i++) {
+            this.buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Puts the parcel in the bucket of its current position, or takes it out if it is no longer waiting.
+     * Also called when the parcel is reserved or freed, to keep count of the parcels no agent has taken on.
+     */
+    public void update(Parcel parcel, boolean waiting) {
+        boolean unreserved = waiting && !parcel.isReserved();
+        if (unreserved != parcel.indexUnreserved) {
+            this.unreserved += unreserved ? 1 : -1;
+            parcel.indexUnreserved = unreserved;
+        }
+
+        int bucket = waiting ? this.getBucket(parcel.getPosition()) : -1;
+        if (bucket == parcel.indexBucket) return;
+
+        if (parcel.indexBucket >= 0) {
+            this.buckets.get(parcel.indexBucket).remove(parcel);
+        }
+        if (bucket >= 0) {
+            this.buckets.get(bucket).add(parcel);
+        }
+        parcel.indexBucket = bucket;
+    }
+
+    /**
+     * Returns whether a waiting parcel is not reserved by any agent.
+     */
+    public boolean hasUnreserved() {
+        return this.unreserved > 0;
+    }
+
+    public Search search(Point from) {
+        return new Search(from);
+    }
+
+    private int getBucket(Point point) {
+        int cell = this.graph.findCell(point);
+        if (cell < 0) return -1;
+        int row = cell / this.graph.getWidth() / this.bucketSize;
+        int col = cell % this.graph.getWidth() / this.bucketSize;
+        return row * this.bucketColumns + col;
+    }
+
+    /**
+     * Visits the waiting parcels from nearest to farthest (by lower bound), expanding rings of buckets around the
+     * starting point only when needed. Parcels that can not be delivered are skipped.
+     */
+    public class Search {
+
+        private int row;
+        private int col;
+        private int bucketRow;
+        private int bucketCol;
+        private int ring = 0;
+        private int lowerBound = 0;
+        private PriorityQueue<Long> queue = new PriorityQueue<>();  // lower bound and index in parcels
+        private List<Parcel> parcels = new ArrayList<>();
+
+        private Search(Point from) {
+            this.row = from.getY() / graph.getCellSize();
+            this.col = from.getX() / graph.getCellSize();
+            this.bucketRow = this.row / bucketSize;
+            this.bucketCol = this.col / bucketSize;
+        }
+
+        /**
+         * Returns the next parcel, or null if all have been visited.
+         */
+        public Parcel next() {
+            while (true) {
+                // every parcel in the next ring is at least this many hops away
+                int ringBound = this.ring == 0 ? 0 : (this.ring - 1) * bucketSize + 1;
+
+                boolean done = this.ring >= Math.max(bucketRows, bucketColumns);
+
+                if (!this.queue.isEmpty() && (done || (this.queue.peek() >> 32) <= ringBound)) {
+                    long entry = this.queue.poll();
+                    this.lowerBound = (int) (entry >> 32);
+                    return this.parcels.get((int) entry);
+                }
+                if (done) {
+                    return null;
+                }
+
+                this.addRing(this.ring);
+                this.ring += 1;
+            }
+        }
+
+        /**
+         * Returns the lower bound (in hops) of the last parcel returned by next.
+         */
+        public int getLowerBound() {
+            return this.lowerBound;
+        }
+
+        private void addRing(int ring) {
+            for (int r = this.bucketRow - ring; r <= this.bucketRow + ring; r++) {
+                if (r < 0 || r >= bucketRows) continue;
+                boolean edge = r == this.bucketRow - ring || r == this.bucketRow + ring;
+                int step = edge || ring == 0 ? 1 : 2 * ring;
+
+                for (int c = this.bucketCol - ring; c <= this.bucketCol + ring; c += step) {
+                    if (c < 0 || c >= bucketColumns) continue;
+                    for (Parcel parcel : buckets.get(r * bucketColumns + c)) {
+                        this.add(parcel);
+                    }
+                }
+            }
+        }
+
+        private void add(Parcel parcel) {
+            Point position = parcel.getPosition();
+            int leg = parcel.getDeliveryLegLength();
+            if (leg < 0) return;
+
+            int distance = Math.abs(position.getY() / graph.getCellSize() - this.row)
+                    + Math.abs(position.getX() / graph.getCellSize() - this.col);
+
+            // ties are visited in the order in which the parcels were found
+            this.queue.add(((long) (distance + leg) << 32) | this.parcels.size());
+            this.parcels.add(parcel);
+        }
+    }
+}
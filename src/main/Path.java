@@ -0,0 +1,97 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A path as a sequence of cell ids with a cursor at the current cell. Advancing along the path moves the cursor,
+ * so following a path does not allocate anything, and indices are relative to the cursor.
+ */
+public class Path {
+
+    private int[] cells;
+    private int end = 0;
+    private int cursor = 0;
+
+    public Path() {
+        this(16);
+    }
+
+    public Path(int capacity) {
+        this.cells = new int[Math.max(capacity, 1)];
+    }
+
+    public Path(int[] cells) {
+        this.cells = cells;
+        this.end = cells.length;
+    }
+
+    /**
+     * Returns the number of cells left, the current one included.
+     */
+    public int size() {
+        return this.end - this.cursor;
+    }
+
+    public boolean isEmpty() {
+        return this.end == this.cursor;
+    }
+
+    public int get(int index) {
+        return this.cells[this.cursor + index];
+    }
+
+    public int getLast() {
+        return this.cells[this.end - 1];
+    }
+
+    public void set(int index, int cell) {
+        this.cells[this.cursor + index] = cell;
+    }
+
+    public void add(int cell) {
+        this.grow(1);
+        this.cells[this.end - 1] = cell;
+    }
+
+    /**
+     * Appends the cells left on the given path.
+     */
+    public void addAll(Path other) {
+        int size = other.size();
+        this.grow(size);
+        System.arraycopy(other.cells, other.cursor, this.cells, this.end - size, size);
+    }
+
+    /**
+     * Makes room for the given number of cells at the end, to be filled in with set.
+     */
+    public void grow(int count) {
+        if (this.end + count > this.cells.length) {
+            this.cells = Arrays.copyOf(this.cells, Math.max(2 * this.cells.length, this.end + count));
+        }
+        this.end += count;
+    }
+
+    public void removeLast() {
+        this.end -= 1;
+    }
+
+    /**
+     * Drops the cells after the given number of cells.
+     */
+    public void truncate(int size) {
+        this.end = Math.min(this.end, this.cursor + size);
+    }
+
+    /**
+     * Moves on to the next cell.
+     */
+    public void advance() {
+        this.cursor += 1;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOfRange(this.cells, this.cursor, this.end));
+    }
+}
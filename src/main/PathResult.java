@@ -0,0 +1,45 @@
+package main;
+
+/**
+ * The outcome of a path search that may stop after a limited number of expansions. Besides a found path, it can be
+ * the best path so far (to the expanded node closest to the goal) when the search ran out of expansions, or no path
+ * at all when the goal can not be reached. Searches that take other agents into account can also be blocked by them.
+ */
+public class PathResult {
+
+    public enum Status {
+        FOUND,
+        OVER_BUDGET,
+        UNREACHABLE,
+        BLOCKED  // the goal is connected, but agents or reservations are in the way for now
+    }
+
+    private Status status;
+    private Path path;
+    private int expansions;
+
+    public PathResult(Status status, Path path, int expansions) {
+        this.status = status;
+        this.path = path;
+        this.expansions = expansions;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public boolean isFound() {
+        return this.status == Status.FOUND;
+    }
+
+    /**
+     * Returns the found path, the best partial path when over budget, or null when unreachable.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    public int getExpansions() {
+        return this.expansions;
+    }
+}
@@ -0,0 +1,135 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spreads the parcel searches of the agents over the ticks, so that a tick in which many agents want to plan at
+ * the same time does not stall the simulation. Agents ask for a search at their decision, and at the start of every
+ * tick the most urgent ones search until the planner has expanded the budgeted number of states. The others keep
+ * following their current plan and wait for a later tick.
+ */
+public class PlanningScheduler {
+
+    private Simulation simulation;
+    private int budget;
+
+    // agents waiting to search (the time at which they asked is kept by the agent)
+    private List<Agent> requests = new ArrayList<>();
+
+    // the expansions of the planner at the start of the searches of this tick, -1 outside of update
+    private long start = -1;
+
+    // the urgency of a waiting agent, determined once per tick
+    private static class Request implements Comparable<Request> {
+        private Agent agent;
+        private boolean blocking;
+        private boolean batteryLow;
+        private int slack;
+
+        private Request(Agent agent, boolean blocking, int slack) {
+            this.agent = agent;
+            this.blocking = blocking;
+            this.batteryLow = agent.isBatteryLow();
+            this.slack = slack;
+        }
+
+        // negative if this request is more urgent than the other one
+        @Override
+        public int compareTo(Request other) {
+            // an agent standing where another one is about to pass is in the way
+            int blocking = Boolean.compare(other.blocking, this.blocking);
+            if (blocking != 0) return blocking;
+
+            int battery = Boolean.compare(other.batteryLow, this.batteryLow);
+            if (battery != 0) return battery;
+
+            int slack = Integer.compare(this.slack, other.slack);
+            if (slack != 0) return slack;
+
+            int waiting = Integer.compare(this.agent.planRequestTime, other.agent.planRequestTime);
+            if (waiting != 0) return waiting;
+
+            return Integer.compare(this.agent.order, other.agent.order);
+        }
+    }
+
+    public PlanningScheduler(Simulation simulation, int budget) {
+        this.simulation = simulation;
+        this.budget = budget;
+    }
+
+    public void request(Agent agent) {
+        if (agent.planRequestTime < 0) {
+            agent.planRequestTime = this.simulation.getPassedTime();
+            this.requests.add(agent);
+        }
+    }
+
+    public boolean hasRequests() {
+        return !this.requests.isEmpty();
+    }
+
+    /**
+     * Lets the waiting agents search in order of urgency until the budget of this tick is used up.
+     * The most urgent agent always gets to search, however expensive its search is.
+     */
+    public void update(int time) {
+        if (this.requests.isEmpty()) return;
+
+        Request[] order = new Request[this.requests.size()];
+        for (int i = 0; i < order.length; i++) {
+            Agent agent = this.requests.get(i);
+            order[i] = new Request(agent, this.isBlocking(agent, time), this.getSlack(agent, time));
+        }
+        Arrays.sort(order);
+        this.requests.clear();
+
+        this.start = this.simulation.getPlanner().getExpansions();
+        int next = 0;
+        for (; next < order.length && !this.isExhausted(); next++) {
+            Agent agent = order[next].agent;
+            agent.planRequestTime = -1;
+            if (this.simulation.contains(agent)) {
+                agent.plan();
+            }
+        }
+        this.start = -1;
+
+        // the others wait for a later tick
+        for (; next < order.length; next++) {
+            this.requests.add(order[next].agent);
+        }
+    }
+
+    /**
+     * Returns the number of expansions a single search may use: the budget of a whole tick while the scheduler
+     * hands out turns, so that a tick never takes much more than twice the budget.
+     */
+    public int getSearchLimit() {
+        return this.start < 0 ? Integer.MAX_VALUE : this.budget;
+    }
+
+    /**
+     * Returns whether the searches of this tick have used up the budget, so that a search in progress should stop.
+     */
+    public boolean isExhausted() {
+        if (this.start < 0) {
+            return false;
+        }
+        long used = this.simulation.getPlanner().getExpansions() - this.start;
+        return used > 0 && used >= this.budget;
+    }
+
+    private boolean isBlocking(Agent agent, int time) {
+        Node node = this.simulation.getNodeAt(agent.getPosition());
+        return node != null && node.isReserved(time, time + Main.cellSize, agent);
+    }
+
+    // the time left until the deadline of the parcel the agent is heading for
+    private int getSlack(Agent agent, int time) {
+        Parcel parcel = agent.currentParcel;
+        return parcel == null ? Integer.MAX_VALUE : parcel.getDeadline() - time;
+    }
+}
@@ -1,7 +1,5 @@
 package main;
 
-import java.util.List;
-
 public class Point {
 
     private int x;
@@ -36,8 +34,7 @@ public class Point {
 
     @Override
     public int hashCode() {
-        //return this.x + this.y * 997;
-        return this.x + this.y * Main.gridWidth;
+        return 31 * this.x + this.y;
     }
 
     @Override
@@ -54,18 +51,4 @@ public class Point {
     public static Point add(Point point1, Point point2) {
         return new Point(point1.x + point2.x, point1.y + point2.y);
     }
-
-    public static boolean pathsEqual(List<Point> path1, List<Point> path2){
-        if(path1.size() != path2.size()) {
-            return false;
-        }
-
-        for (int i = 0; i < path1.size(); i++) {
-            if (!path1.get(i).equals(path2.get(i))) {
-                return false;
-            }
-        }
-
-        return true;
-    }
 }
\ No newline at end of file
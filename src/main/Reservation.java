@@ -6,11 +6,51 @@ public class Reservation {
     private int endTime;
     private Agent agent;
     private int refreshTimer;
+    private Node node;
+    private int fromCell;  // the cell the agent comes from when it enters the node, -1 if unknown
+    private boolean cancelled = false;
 
-    public Reservation(int startTime, int endTime, Agent agent) {
+    // the slots this reservation is counted in, maintained by the ReservationTable
+    int markedFrom = 0;
+    int markedTo = -1;
+    boolean overflowed = false;
+
+    public Reservation(int startTime, int endTime, Agent agent, Node node, int fromCell) {
         this.startTime = startTime;
         this.endTime = endTime;
         this.agent = agent;
+        this.node = node;
+        this.fromCell = fromCell;
+    }
+
+    /**
+     * Removes the reservation from its node. The node skips it from now on and drops it when it needs the room.
+     */
+    public void cancel() {
+        if (this.cancelled) return;
+        this.cancelled = true;
+        this.node.cancel(this);
+    }
+
+    /**
+     * Shortens the reservation so that it ends at the given time, or cancels it if it does not start before then.
+     */
+    public void truncate(int time) {
+        if (this.cancelled || time >= this.endTime) return;
+        if (time <= this.startTime) {
+            this.cancel();
+            return;
+        }
+        this.node.truncate(this, time);
+    }
+
+    // called by the node, which keeps the reservation table in line
+    void setEndTime(int endTime) {
+        this.endTime = endTime;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
     }
 
     public int getStartTime() {
@@ -24,4 +64,8 @@ public class Reservation {
     public Agent getAgent() {
         return this.agent;
     }
+
+    public int getFromCell() {
+        return this.fromCell;
+    }
 }
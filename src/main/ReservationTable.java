@@ -0,0 +1,148 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A coarse global view of the reservations of all nodes: a ring buffer of time slots over a bounded horizon from the
+ * current tick, where every slot is a bit set of the cells that are reserved at some moment during the slot.
+ * A clear bit means that the cell is certainly free for the whole slot, so most checks are a few bit tests. A set
+ * bit, or a time outside of the horizon, only means that the cell may be reserved, and the node decides exactly.
+ * Every slot also counts the reservations per cell, so that removing one only touches the slots it was counted in.
+ * Slots that fall behind the current tick are reused for the end of the horizon without clearing them first.
+ */
+public class ReservationTable {
+
+    private Simulation simulation;
+    private int slotLength;
+    private int mask;
+
+    private long[][] slots;
+    private int[][] counts;  // per ring entry, the number of reservations of every cell, non-zero exactly if its bit is set
+    private int[] slotIndices;  // the absolute index (time / slot length) of the slot held by every ring entry
+
+    // per cell, the range of slots of reservations that did not fit in the horizon when they were made, and how many
+    // of those are left
+    private int[] overflowFrom;
+    private int[] overflowTo;
+    private int[] overflowCounts;
+
+    /**
+     * @param slots the number of slots in the horizon, a power of two
+     */
+    public ReservationTable(Simulation simulation, int cells, int slotLength, int slots) {
+        this.simulation = simulation;
+        this.slotLength = slotLength;
+        this.mask = slots - 1;
+
+        this.slots = new long[slots][(cells + 63) >>> 6];
+        this.counts = new int[slots][cells];
+        this.slotIndices = new int[slots];
+        Arrays.fill(this.slotIndices, -1);
+
+        this.overflowFrom = new int[cells];
+        this.overflowTo = new int[cells];
+        this.overflowCounts = new int[cells];
+        Arrays.fill(this.overflowFrom, Integer.MAX_VALUE);
+        Arrays.fill(this.overflowTo, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Marks the given cell as reserved from the start (inclusive) to the end (exclusive) of the given reservation,
+     * and records on the reservation which slots it is counted in.
+     */
+    public void add(int cell, Reservation reservation) {
+        int start = reservation.getStartTime();
+        int end = reservation.getEndTime();
+        reservation.markedFrom = 0;
+        reservation.markedTo = -1;
+        reservation.overflowed = false;
+        if (end <= start) return;
+
+        int current = this.getCurrentSlot();
+        int first = Math.max(Math.floorDiv(start, this.slotLength), current);
+        int last = Math.floorDiv(end - 1, this.slotLength);
+        int marked = Math.min(last, current + this.mask);
+
+        for (int slot = first; slot <= marked; slot++) {
+            int index = this.claim(slot);
+            if (this.counts[index][cell]++ == 0) {
+                this.slots[index][cell >>> 6] |= 1L << cell;
+            }
+        }
+        reservation.markedFrom = first;
+        reservation.markedTo = marked;
+
+        if (last > marked) {
+            this.overflowFrom[cell] = Math.min(this.overflowFrom[cell], Math.max(first, marked + 1));
+            this.overflowTo[cell] = Math.max(this.overflowTo[cell], last);
+            this.overflowCounts[cell] += 1;
+            reservation.overflowed = true;
+        }
+    }
+
+    /**
+     * Takes the given reservation of the cell out of the slots it was counted in. Slots that have been reused since
+     * no longer count it anyway.
+     */
+    public void remove(int cell, Reservation reservation) {
+        for (int slot = reservation.markedFrom; slot <= reservation.markedTo; slot++) {
+            int index = slot & this.mask;
+            if (this.slotIndices[index] == slot && --this.counts[index][cell] == 0) {
+                this.slots[index][cell >>> 6] &= ~(1L << cell);
+            }
+        }
+        reservation.markedTo = reservation.markedFrom - 1;
+
+        if (reservation.overflowed) {
+            reservation.overflowed = false;
+            if (--this.overflowCounts[cell] == 0) {
+                this.overflowFrom[cell] = Integer.MAX_VALUE;
+                this.overflowTo[cell] = Integer.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Returns false if the cell is certainly not reserved at any moment from start (inclusive) to end (exclusive).
+     */
+    public boolean mightBeReserved(int cell, int start, int end) {
+        if (end <= start) return false;
+
+        int current = this.getCurrentSlot();
+        int first = Math.floorDiv(start, this.slotLength);
+        int last = Math.floorDiv(end - 1, this.slotLength);
+        if (first < current || last > current + this.mask) {
+            // outside of the horizon
+            return true;
+        }
+        if (first <= this.overflowTo[cell] && this.overflowFrom[cell] <= last) {
+            return true;
+        }
+
+        long bit = 1L << cell;
+        int word = cell >>> 6;
+        for (int slot = first; slot <= last; slot++) {
+            int index = slot & this.mask;
+            // a ring entry that holds an older slot means that nothing was reserved in this one yet
+            if (this.slotIndices[index] == slot && (this.slots[index][word] & bit) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getCurrentSlot() {
+        return Math.floorDiv(this.simulation.getPassedTime(), this.slotLength);
+    }
+
+    // the ring entry of the given slot within the horizon, recycled if it holds a slot in the past
+    private int claim(int slot) {
+        int index = slot & this.mask;
+        if (this.slotIndices[index] != slot) {
+            Arrays.fill(this.slots[index], 0);
+            Arrays.fill(this.counts[index], 0);
+            this.slotIndices[index] = slot;
+        }
+        return index;
+    }
+}
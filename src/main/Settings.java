@@ -0,0 +1,33 @@
+package main;
+
+/**
+ * The parameters of a single simulation. New settings start from the defaults in Main.
+ */
+public class Settings {
+
+    public String agentType = Main.AGENT_TYPE;  // "simple" or "naive" or "complex"
+    public int parcelAmount = Main.parcelAmount;
+    public int arrivalWindow = Main.arrivalWindow;
+    public int chargingMultiplier = Main.chargingMultiplier;
+    public int batteryCapacity = Main.batteryCapacity;
+    public int simpleDeliveryCount = Main.simpleDeliveryCount;
+    public long seed = 1;
+    public boolean eventDriven = false;  // skip the ticks in which nothing happens
+    public boolean centralDispatch = false;  // assign parcels to agents with a dispatcher
+    public int planningBudget = 0;  // planner expansions per tick for parcel searches, 0 for no limit
+
+    public Settings copy() {
+        Settings settings = new Settings();
+        settings.agentType = this.agentType;
+        settings.parcelAmount = this.parcelAmount;
+        settings.arrivalWindow = this.arrivalWindow;
+        settings.chargingMultiplier = this.chargingMultiplier;
+        settings.batteryCapacity = this.batteryCapacity;
+        settings.simpleDeliveryCount = this.simpleDeliveryCount;
+        settings.seed = this.seed;
+        settings.eventDriven = this.eventDriven;
+        settings.centralDispatch = this.centralDispatch;
+        settings.planningBudget = this.planningBudget;
+        return settings;
+    }
+}
@@ -7,27 +7,73 @@ import java.util.List;
 public class Simulation implements Painter {
 
     private Graph graph;
-    private Set<SimulationObject> objects = new HashSet<>();
+    private Set<SimulationObject> objects = new LinkedHashSet<>();
+    private SimulationObject[] tickOrder = null;  // tick-by-tick mode: a snapshot of objects, dropped when it changes
+
+    // the registered objects per type, kept up to date by register and unregister
+    private List<Agent> agents = new ArrayList<>();
+    private Set<Parcel> parcels = new LinkedHashSet<>();
+    private List<BatteryStation> batteryStations = new ArrayList<>();
+    private List<DeliveryLocation> deliveryLocations = new ArrayList<>();
+    private OccupancyGrid occupancy;
+    private ParcelIndex parcelIndex;
+    private Random random;
+    private Settings settings;
+    private Tracker tracker = new Tracker();
     private Thread thread;
     private Runner runner;
     private int passedTime;
-    private Map<Integer, List<ParcelEvent>> eventMap = new HashMap<>();
+    private TreeMap<Integer, List<ParcelEvent>> eventMap = new TreeMap<>();
     //private Scenario scenario = new Scenario(this);
 
     private boolean initiated = false;
-    private Map<Point, Node> pointToNode = new HashMap<>();
-
-    private int parcelAmount = Main.parcelAmount;//100;
-    private int arrivalWindowOfParcels = Main.arrivalWindow;//15000;
+    private Node[] cellToNode;  // a node for every cell, walls included
+    private ReservationTable reservationTable;
+    private SpaceTimePlanner planner;
+    private Dispatcher dispatcher = null;
+    private PlanningScheduler planningScheduler = null;
+    private ChangeBus changeBus = new ChangeBus(this);
+
+    // event-driven mode: the objects by registration order (null once unregistered), and their pending wake-ups
+    private List<SimulationObject> registered = new ArrayList<>();
+    private WakeUpQueue wakeUps = new WakeUpQueue();
+    private boolean stepping = false;
+    private int processingOrder = -1;
+    private int snapshotLimit = Integer.MAX_VALUE;
+
+    // distance fields towards the battery stations and delivery locations, rebuilt when any of them changes
+    private DistanceField batteryStationField = null;
+    private DistanceField[] landmarkFields;  // indexed by the cell of the landmark
+
+    private int parcelAmount;//100;
+    private int arrivalWindowOfParcels;//15000;
     private int parcelsDelivered = 0;
 
     public Simulation(Graph graph) {
+        this(graph, new Settings());
+    }
+
+    public Simulation(Graph graph, Settings settings) {
         this.graph = graph;
+        this.settings = settings;
+        this.parcelAmount = settings.parcelAmount;
+        this.arrivalWindowOfParcels = settings.arrivalWindow;
+        this.random = new Random(settings.seed);
+        this.occupancy = new OccupancyGrid(graph);
+        this.landmarkFields = new DistanceField[graph.getWidth() * graph.getHeight()];
+        this.reservationTable = new ReservationTable(this, graph.getWidth() * graph.getHeight(), Main.cellSize, 128);
+        this.parcelIndex = new ParcelIndex(graph, 4);
+        if (settings.centralDispatch) {
+            this.dispatcher = new Dispatcher(this, graph, Agent.getDecisionInterval(), Main.cellSize);
+        }
+        if (settings.planningBudget > 0) {
+            this.planningScheduler = new PlanningScheduler(this, settings.planningBudget);
+        }
         this.createNodes();
     }
 
     public void setupParcelEvents() {
-        this.eventMap = new HashMap<>();
+        this.eventMap = new TreeMap<>();
         Random r = new Random(192837464);
         Random q = new Random(738483);
         //int parcelAmount = 4*100;//0;
@@ -42,8 +88,10 @@ public class Simulation implements Painter {
                 arrivalTime = 100 + arrivalWindowOfParcels/parcelAmount * i;
             }
 
-            Point p = this.getRandomFreeLocation(r);
-            this.addParcelEvent(arrivalTime, new ParcelEvent(p, this.getRandomDeliveryLocationSeeded(q), arrivalTime));
+            // the parcel appears where it can be delivered from
+            Point delivery = this.getRandomDeliveryLocationSeeded(q);
+            Point p = this.getRandomFreeLocation(r, delivery);
+            this.addParcelEvent(arrivalTime, new ParcelEvent(p, delivery, arrivalTime));
         }
     }
 
@@ -69,42 +117,233 @@ public class Simulation implements Painter {
     }
 
     public void parcelDelivered(Parcel parcel) {
-        //this.statTracker.addParcelDelivery(parcel, this.getPassedTime());
-        Tracker.addParcelDelivery(parcel, this.getPassedTime());
+        this.tracker.addParcelDelivery(parcel, this.getPassedTime());
 
         parcelsDelivered += 1;
         if (parcelsDelivered >= parcelAmount && Main.DEBUG) {
             System.out.println("\n-------------------");
-            System.out.println("Average parcel time: " + Tracker.getAverageParcelTime());
-            System.out.println("Number of times charged: " + Main.timesCharged);
+            System.out.println("Average parcel time: " + this.tracker.getAverageParcelTime());
+            System.out.println("Number of times charged: " + this.tracker.getTimesCharged());
         }
 
-        int delta = this.getPassedTime() - parcel.getDeadline();
-        if (delta <= 0) {
-            Main.nbOnTime += 1;
-        } else {
-            Main.nbTooLate += 1;
+        if (Main.simulation == this) {
+            Main.updateStats();
+        }
+    }
+
+    /**
+     * Creates an agent of the type given in the settings.
+     */
+    public Agent createAgent(int x, int y) {
+        switch (this.settings.agentType) {
+            case "simple":
+                return new AgentSimple(x, y);
+            case "naive":
+                return new AgentNaive(x, y);
+            case "complex":
+                return new AgentComplex(x, y);
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds the walls, battery stations, delivery locations and agents of a map (in the .mpm format).
+     */
+    public void loadMap(String contents) {
+        String[] lines = contents.split("\n");
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.trim().equals("")) continue;
+            String[] tokens = line.split(" ");
+
+            String name = tokens[0];
+            int x = Integer.parseInt(tokens[1]);
+            int y = Integer.parseInt(tokens[2].trim());
+
+            switch (name) {
+                case "wall":
+                    this.graph.setNodeAt(x, y, false);
+                    break;
+
+                case "battery":
+                    this.register(new BatteryStation(x, y));
+                    break;
+
+                case "delivery":
+                    this.register(new DeliveryLocation(x, y));
+                    break;
+
+                case "agent":
+                    this.register(this.createAgent(x, y));
+                    break;
+            }
         }
-        Main.avgLateness += delta;
-        Main.updateStats();
     }
 
     private void createNodes() {
-        Set<Point> points = this.graph.getPoints();
-        for (Point point : points) {
+        this.cellToNode = new Node[this.graph.getWidth() * this.graph.getHeight()];
+        for (int cell = 0; cell < this.cellToNode.length; cell++) {
+            Point point = this.graph.getPoint(cell);
             Node node = new Node(point.getX(), point.getY());
             this.register(node);
-            this.pointToNode.put(point, node);
+            this.cellToNode[cell] = node;
         }
     }
 
     public void register(SimulationObject object) {
-        objects.add(object);
+        if (!objects.add(object)) return;
+        this.tickOrder = null;
+
+        if (object instanceof Agent) {
+            this.agents.add((Agent) object);
+        } else if (object instanceof Parcel) {
+            this.parcels.add((Parcel) object);
+        } else if (object instanceof BatteryStation) {
+            this.batteryStations.add((BatteryStation) object);
+        } else if (object instanceof DeliveryLocation) {
+            this.deliveryLocations.add((DeliveryLocation) object);
+        }
+
+        object.order = this.registered.size();
+        this.registered.add(object);
+
         object.init(this, graph);
+        this.occupancy.add(object);
+        this.landmarkChanged(object);
+        if (object instanceof Parcel) {
+            this.parcelChanged((Parcel) object);
+            this.changeBus.publish(ChangeBus.PARCEL_ARRIVED);
+        }
+        this.wake(object);
+    }
+
+    public boolean contains(SimulationObject object) {
+        return this.objects.contains(object);
     }
 
     public void unregister(SimulationObject object) {
-        objects.remove(object);
+        if (!objects.remove(object)) return;
+        this.tickOrder = null;
+
+        if (object instanceof Agent) {
+            this.agents.remove(object);
+        } else if (object instanceof Parcel) {
+            this.parcels.remove(object);
+        } else if (object instanceof BatteryStation) {
+            this.batteryStations.remove(object);
+        } else if (object instanceof DeliveryLocation) {
+            this.deliveryLocations.remove(object);
+        }
+
+        this.registered.set(object.order, null);
+        object.order = -1;
+        object.wakeTime = -1;
+
+        this.occupancy.remove(object);
+        this.landmarkChanged(object);
+        if (object instanceof Parcel) {
+            this.parcelChanged((Parcel) object);
+        }
+    }
+
+    /**
+     * Makes sure that the given object ticks again in event-driven mode: in the current step if it comes after the
+     * object that is ticking now, and in the next step otherwise, just like it would in tick-by-tick mode.
+     */
+    public void wake(SimulationObject object) {
+        if (!this.settings.eventDriven || object.order < 0) return;
+
+        int time = this.passedTime + 1;
+        if (this.stepping && object.order > this.processingOrder && object.order < this.snapshotLimit) {
+            time = this.passedTime;
+        }
+        this.schedule(object, time);
+    }
+
+    /**
+     * Returns whether the given object has already ticked in the current step (always true in between steps).
+     */
+    public boolean hasTicked(SimulationObject object) {
+        return !this.stepping || object.order <= this.processingOrder;
+    }
+
+    private void schedule(SimulationObject object, int time) {
+        if (object.wakeTime >= 0 && object.wakeTime <= time) {
+            // an earlier wake-up is pending already
+            return;
+        }
+        // a later wake-up that is still queued is skipped because it no longer matches the wake time
+        object.wakeTime = time;
+        this.wakeUps.add(time, object.order);
+    }
+
+    /**
+     * Called by agents and parcels when they have moved away from the given point.
+     */
+    public void objectMoved(SimulationObject object, Point from) {
+        if (!this.objects.contains(object)) return;
+        this.occupancy.move(object, from, object.getPosition());
+        if (object instanceof Parcel) {
+            this.parcelChanged((Parcel) object);
+        }
+    }
+
+    /**
+     * Called by parcels when they have been picked up, dropped, reserved or freed, to keep the index of waiting
+     * parcels up to date.
+     */
+    public void parcelChanged(Parcel parcel) {
+        this.parcelIndex.update(parcel, this.objects.contains(parcel) && !parcel.isBeingTransported());
+    }
+
+    private void landmarkChanged(SimulationObject object) {
+        if (object instanceof BatteryStation) {
+            this.batteryStationField = null;
+        } else if (!(object instanceof DeliveryLocation)) {
+            return;
+        }
+
+        int cell = this.graph.findCell(object.getPosition());
+        if (cell >= 0) {
+            this.landmarkFields[cell] = null;
+        }
+
+        for (Parcel parcel : this.parcels) {
+            parcel.invalidateDeliveryLeg();
+        }
+    }
+
+    /**
+     * Returns the distance field towards the closest battery station.
+     */
+    public DistanceField getBatteryStationField() {
+        if (this.batteryStationField == null) {
+            List<Point> points = new ArrayList<>();
+            for (BatteryStation station : this.getBatteryStations()) {
+                points.add(station.getPosition());
+            }
+            this.batteryStationField = new DistanceField(this.graph, points);
+        }
+        return this.batteryStationField;
+    }
+
+    /**
+     * Returns the distance field towards the given battery station or delivery location.
+     */
+    public DistanceField getDistanceField(Point landmark) {
+        int cell = this.graph.findCell(landmark);
+        if (cell < 0) {
+            return new DistanceField(this.graph, landmark);
+        }
+
+        DistanceField field = this.landmarkFields[cell];
+        if (field == null) {
+            field = new DistanceField(this.graph, landmark);
+            this.landmarkFields[cell] = field;
+        }
+        return field;
     }
 
     public boolean isRunning() {
@@ -115,21 +354,149 @@ public class Simulation implements Painter {
         return this.graph;
     }
 
+    /**
+     * Returns the dispatcher that assigns parcels to agents, or null if agents search for parcels themselves.
+     */
+    public Dispatcher getDispatcher() {
+        return this.dispatcher;
+    }
+
+    /**
+     * Returns the scheduler that limits the parcel searches per tick, or null if agents search right away.
+     */
+    public PlanningScheduler getPlanningScheduler() {
+        return this.planningScheduler;
+    }
+
+    /**
+     * Returns the index of the parcels that are waiting to be picked up.
+     */
+    public ParcelIndex getParcelIndex() {
+        return this.parcelIndex;
+    }
+
+    public ChangeBus getChangeBus() {
+        return this.changeBus;
+    }
+
+    public Settings getSettings() {
+        return this.settings;
+    }
+
+    public Tracker getTracker() {
+        return this.tracker;
+    }
+
+    public Random getRandom() {
+        return this.random;
+    }
+
     public int getPassedTime() {
         return this.passedTime;
     }
 
+    public int getParcelAmount() {
+        return this.parcelAmount;
+    }
+
+    public int getParcelsDelivered() {
+        return this.parcelsDelivered;
+    }
+
     public void simulate() {
-        passedTime += 1;
-        this.doParcelEvents(passedTime, this);
-        //scenario.doEvents(passedTime, this);
+        this.simulate(Integer.MAX_VALUE);
+    }
 
-        Set<SimulationObject> objects = new HashSet<>(this.objects);
-        for (SimulationObject object : objects) {
+    /**
+     * Advances the simulation by one tick, or in event-driven mode to the next time at which anything happens,
+     * but never beyond the given time.
+     */
+    public void simulate(int maxTime) {
+        if (this.settings.eventDriven) {
+            this.simulateEvents(maxTime);
+        } else {
+            passedTime += 1;
+            this.stepping = true;
+            this.processingOrder = -1;
+            this.doParcelEvents(passedTime, this);
+            //scenario.doEvents(passedTime, this);
+            if (this.dispatcher != null) {
+                this.dispatcher.update(passedTime);
+            }
+            if (this.planningScheduler != null) {
+                this.planningScheduler.update(passedTime);
+            }
+
+            if (this.tickOrder == null) {
+                this.tickOrder = this.objects.toArray(new SimulationObject[0]);
+            }
+            for (SimulationObject object : this.tickOrder) {
+                if (object.order >= 0) {
+                    this.processingOrder = object.order;
+                }
+                object.tick();
+            }
+            this.stepping = false;
+        }
+
+        if (Main.window != null && Main.simulation == this) {
+            Main.window.labelTick.setText("" + passedTime);
+        }
+    }
+
+    // ticks the objects that are woken up at the next event time, in registration order
+    private void simulateEvents(int maxTime) {
+        int time = Integer.MAX_VALUE;
+        if (!this.wakeUps.isEmpty()) {
+            time = this.wakeUps.peekTime();
+        }
+        Integer eventTime = this.eventMap.higherKey(this.passedTime);
+        if (eventTime != null) {
+            time = Math.min(time, eventTime);
+        }
+        if (this.dispatcher != null && this.dispatcher.hasWaitingParcels()) {
+            time = Math.min(time, this.dispatcher.getNextDispatchTime(this.passedTime));
+        }
+        if (this.planningScheduler != null && this.planningScheduler.hasRequests()) {
+            time = this.passedTime + 1;
+        }
+        time = Math.max(this.passedTime + 1, Math.min(time, maxTime));
+        this.passedTime = time;
+
+        this.stepping = true;
+        this.processingOrder = -1;
+        this.snapshotLimit = Integer.MAX_VALUE;
+        this.doParcelEvents(time, this);
+        if (this.dispatcher != null) {
+            this.dispatcher.update(time);
+        }
+        if (this.planningScheduler != null) {
+            this.planningScheduler.update(time);
+        }
+
+        // objects registered from here on only tick from the next step, as they would not be in the tick snapshot
+        this.snapshotLimit = this.registered.size();
+
+        while (!this.wakeUps.isEmpty() && this.wakeUps.peekTime() == time) {
+            int order = this.wakeUps.peekOrder();
+            this.wakeUps.remove();
+
+            SimulationObject object = this.registered.get(order);
+            if (object == null || object.wakeTime != time) continue;
+
+            object.wakeTime = -1;
+            this.processingOrder = order;
             object.tick();
+
+            if (object.order == order) {
+                int next = object.getNextTickTime(time);
+                if (next > time) {
+                    this.schedule(object, next);
+                }
+            }
         }
 
-        Main.window.labelTick.setText("" + passedTime);
+        this.stepping = false;
     }
 
     public void start(int ticksPerSecond) {
@@ -161,71 +528,39 @@ public class Simulation implements Painter {
     }
 
     public Set<SimulationObject> getObjects() {
-        return new HashSet<>(this.objects);
+        return new LinkedHashSet<>(this.objects);
     }
 
     public List<BatteryStation> getBatteryStations() {
-        List<BatteryStation> stations = new ArrayList<>();
-        for (SimulationObject object : this.getObjects()) {
-            if (!(object instanceof BatteryStation)) continue;
-            BatteryStation station = (BatteryStation) object;
-            stations.add(station);
-        }
-        return stations;
+        return Collections.unmodifiableList(this.batteryStations);
     }
 
     public BatteryStation getBatteryStationAt(Point point) {
-        for (BatteryStation station : this.getBatteryStations()) {
-            if (station.getPosition().equals(point)) {
-                return station;
-            }
-        }
-        return null;
+        return this.occupancy.getBatteryStationAt(point);
     }
 
     public List<DeliveryLocation> getDeliveryLocations() {
-        List<DeliveryLocation> locs = new ArrayList<>();
-        for (SimulationObject object : this.getObjects()) {
-            if (!(object instanceof DeliveryLocation)) continue;
-            DeliveryLocation loc = (DeliveryLocation) object;
-            locs.add(loc);
-        }
-        return locs;
+        return Collections.unmodifiableList(this.deliveryLocations);
     }
 
     public DeliveryLocation getDeliveryLocationAt(Point point) {
-        for (DeliveryLocation loc : this.getDeliveryLocations()) {
-            if (loc.getPosition().equals(point)) {
-                return loc;
-            }
-        }
-        return null;
+        return this.occupancy.getDeliveryLocationAt(point);
     }
 
     public List<Agent> getAgents() {
-        List<Agent> agents = new ArrayList<>();
-        for (SimulationObject object : this.getObjects()) {
-            if (!(object instanceof Agent)) continue;
-            Agent agent = (Agent) object;
-            agents.add(agent);
-        }
-        return agents;
+        return Collections.unmodifiableList(this.agents);
     }
 
     public Agent getAgentAt(Point point) {
-        for (Agent agent : this.getAgents()) {
-            if (agent.getPosition().equals(point)) {
-                return agent;
-            }
-        }
-        return null;
+        return this.occupancy.getAgentAt(point);
     }
 
+    /**
+     * Returns a snapshot of the parcels that are not being transported.
+     */
     public List<Parcel> getParcels() {
-        List<Parcel> parcels = new ArrayList<>();
-        for (SimulationObject object : this.getObjects()) {
-            if (!(object instanceof Parcel)) continue;
-            Parcel parcel = (Parcel) object;
+        List<Parcel> parcels = new ArrayList<>(this.parcels.size());
+        for (Parcel parcel : this.parcels) {
             if (!parcel.isBeingTransported()) {
                 parcels.add(parcel);
             }
@@ -234,23 +569,38 @@ public class Simulation implements Painter {
     }
 
     public Parcel getParcelAt(Point point) {
-        for (SimulationObject object : this.getObjects()) {
-            if (!(object instanceof Parcel)) continue;
-            Parcel parcel = (Parcel) object;
-            if (parcel.getPosition().equals(point)) {
-                return parcel;
-            }
-        }
-        return null;
+        return this.occupancy.getParcelAt(point);
     }
 
+    /**
+     * Returns the node at the given point, or null if the point does not lie exactly on a cell.
+     */
     public Node getNodeAt(Point point) {
-        return this.pointToNode.get(point);
+        int cell = this.graph.findCell(point);
+        return cell < 0 ? null : this.cellToNode[cell];
+    }
+
+    public Node getNodeAt(int cell) {
+        return this.cellToNode[cell];
+    }
+
+    /**
+     * Returns the bit sets over time slots that tell quickly whether a node is certainly not reserved.
+     */
+    public ReservationTable getReservationTable() {
+        return this.reservationTable;
+    }
+
+    public SpaceTimePlanner getPlanner() {
+        if (this.planner == null) {
+            this.planner = new SpaceTimePlanner(this, this.graph, Main.cellSize);
+        }
+        return this.planner;
     }
 
     public Point getRandomDeliveryLocation() {
         List<DeliveryLocation> locs = this.getDeliveryLocations();
-        int index = (int) (Math.random() * locs.size());
+        int index = this.random.nextInt(locs.size());
         DeliveryLocation loc = locs.get(index);
         return loc.getPosition();
     }
@@ -262,38 +612,38 @@ public class Simulation implements Painter {
         return loc.getPosition();
     }
 
+    /**
+     * Returns a random point of the graph without agent, battery station or delivery location.
+     */
+    public Point getRandomFreeLocation() {
+        return this.getRandomFreeLocation(this.random);
+    }
+
+    /**
+     * Returns a random free point that is connected to the given one.
+     */
+    public Point getRandomFreeLocation(Point near) {
+        return this.getRandomFreeLocation(this.random, near);
+    }
+
     private Point getRandomFreeLocation(Random r) {
-        /*
-        int x, y, col, row;
-        boolean cond;
-        Point p;
-
-        do {
-            row = r.nextInt(Main.gridHeight);
-            col = r.nextInt(Main.gridWidth);
-            y = row * Main.cellSize;
-            x = col * Main.cellSize;
-            p = new Point(x, y);
-            cond = this.getDeliveryLocationAt(p) == null && this.getBatteryStationAt(p) == null;
-        } while (!this.graph.hasNodeAt(row, col) || !cond);
-
-        return p;
-        */
-        while (true) {
-            Point point = this.graph.getRandomPointSeeded(r);
-            boolean free = true;
-            for (SimulationObject object : this.objects) {
-                if (object instanceof Agent || object instanceof BatteryStation || object instanceof DeliveryLocation) {
-                    if (object.getPosition().equals(point)) {
-                        free = false;
-                        break;
-                    }
-                }
-            }
-            if (free) {
-                return point;
-            }
+        int cell = this.occupancy.getRandomFreeCell(r);
+        if (cell < 0) {
+            throw new IllegalStateException("There is no free location left in the graph");
+        }
+        return this.graph.getPoint(cell);
+    }
+
+    private Point getRandomFreeLocation(Random r, Point near) {
+        if (!this.graph.containsPoint(near)) {
+            return this.getRandomFreeLocation(r);
+        }
+
+        int cell = this.occupancy.getRandomFreeCell(r, this.graph.getComponent(this.graph.getCell(near)));
+        if (cell < 0) {
+            throw new IllegalStateException("There is no free location left in the component of " + near);
         }
+        return this.graph.getPoint(cell);
     }
 
 
@@ -423,10 +773,14 @@ public class Simulation implements Painter {
         }
 
         // objects
+        Map<Parcel, Point> carried = new HashMap<>();
         for (SimulationObject object : objects) {
             if (object instanceof Agent) {
                 Agent agent = (Agent) object;
                 Point position = agent.getPosition();
+                if (agent.transporting && agent.currentParcel != null) {
+                    carried.put(agent.currentParcel, position);
+                }
                 int x = ox + position.getX();
                 int y = oy + position.getY();
 
@@ -487,7 +841,7 @@ public class Simulation implements Painter {
         for (SimulationObject object : objects) {
             if (object instanceof Parcel) {
                 Parcel parcel = (Parcel) object;
-                Point position = parcel.getPosition();
+                Point position = carried.getOrDefault(parcel, parcel.getPosition());
                 int x = ox + position.getX();
                 int y = oy + position.getY();
 
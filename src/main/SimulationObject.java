@@ -4,6 +4,10 @@ public abstract class SimulationObject {
 
     protected Point position;
 
+    // registration order and pending wake-up time, maintained by the simulation in event-driven mode
+    int order = -1;
+    int wakeTime = -1;
+
     public SimulationObject(Point position) {
         this.position = position;
     }
@@ -23,6 +27,14 @@ public abstract class SimulationObject {
     public abstract void init(Simulation simulation, Graph graph);
     public abstract void tick();
 
+    /**
+     * Returns the first time after the given one at which tick could change anything if nothing else changes in the
+     * meantime, or -1 if the object only has to tick again after being woken up (see Simulation.wake).
+     */
+    public int getNextTickTime(int time) {
+        return -1;
+    }
+
     @Override
     public String toString(){
         return this.position.toString();
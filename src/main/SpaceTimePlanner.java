@@ -0,0 +1,244 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Cooperative A* over (cell, time step) states, planned directly against the reservations of the nodes.
+ * Besides moving to a neighbouring cell, an agent can wait in place for one step, so a single search returns the
+ * earliest arrival that does not conflict with any reservation.
+ */
+public class SpaceTimePlanner {
+
+    private static final int MAX_EXPANSIONS = 50000;
+
+    private Simulation simulation;
+    private Graph graph;
+    private int travelTime;
+
+    // discovered states, in order of discovery
+    private int[] stateCells = new int[1024];
+    private int[] stateSteps = new int[1024];
+    private int[] stateParents = new int[1024];
+    private int[] stateNext = new int[1024];
+    private int stateCount = 0;
+
+    // open list: one (LIFO) bucket per f-value, so that deeper states are expanded first on ties
+    private int[] bucketHeads = new int[64];
+
+    // closed set: open addressing from (step, cell) to state id, valid when stamped with the current generation
+    private long[] tableKeys = new long[4096];
+    private int[] tableValues = new int[4096];
+    private int[] tableStamps = new int[4096];
+    private int generation = 0;
+
+    private int[] neighbours = new int[4];
+
+    private long expansions = 0;  // over all searches
+
+    public SpaceTimePlanner(Simulation simulation, Graph graph, int travelTime) {
+        this.simulation = simulation;
+        this.graph = graph;
+        this.travelTime = travelTime;
+    }
+
+    /**
+     * Plans a path from one point to another for the given agent, departing at the given time.
+     * Every step of the path (a move or a wait) takes the travel time of one node,
+     * the node entered during a step must not be reserved (by another agent) for that step,
+     * and no other agent may move the opposite way between the same two nodes during that step.
+     * Consecutive equal points in the resulting path mean that the agent waits in place.
+     * When a path is found, its cells (one more than the number of steps) are appended to the given path. When the
+     * search is cut short, the path to the discovered state closest to the goal is appended instead.
+     *
+     * @return FOUND, UNREACHABLE if the points are not connected, OVER_BUDGET if the search was cut short, or BLOCKED
+     * if the goal is occupied or no conflict-free path exists within the searched number of steps
+     */
+    public PathResult.Status plan(Agent agent, Point from, Point to, int startTime, Path path) {
+        return this.plan(agent, from, to, startTime, path, MAX_EXPANSIONS);
+    }
+
+    /**
+     * Plans a path like above, but gives up after expanding the given number of states.
+     * Goals that are walled off or occupied by a standing agent are rejected without searching.
+     */
+    public PathResult.Status plan(Agent agent, Point from, Point to, int startTime, Path path, int maxExpansions) {
+        if (!this.graph.isConnected(from, to)) {
+            return PathResult.Status.UNREACHABLE;
+        }
+
+        int start = this.graph.getCell(from);
+        int goal = this.graph.getCell(to);
+        if (goal != start && this.graph.isBlocked(goal)) {
+            return PathResult.Status.BLOCKED;
+        }
+        maxExpansions = Math.min(maxExpansions, MAX_EXPANSIONS);
+        int columns = this.graph.getWidth();
+        int goalRow = goal / columns;
+        int goalCol = goal % columns;
+
+        int minSteps = this.heuristic(start, goalRow, goalCol);
+        int maxSteps = minSteps + 2 * (this.graph.getWidth() + this.graph.getHeight());
+
+        this.generation += 1;
+        this.stateCount = 0;
+        if (this.bucketHeads.length <= maxSteps) {
+            this.bucketHeads = new int[2 * maxSteps];
+        }
+        Arrays.fill(this.bucketHeads, 0, maxSteps + 1, -1);
+
+        int first = this.addState(start, 0, -1);
+        this.push(first, minSteps);
+        int f = minSteps;
+        int expansions = 0;
+        int found = -1;
+        int closest = first;  // the discovered state with the lowest heuristic, the first one on ties
+        int closestH = minSteps;
+
+        while (f <= maxSteps && expansions < maxExpansions) {
+            int state = this.bucketHeads[f];
+            if (state < 0) {
+                f += 1;
+                continue;
+            }
+            this.bucketHeads[f] = this.stateNext[state];
+            expansions += 1;
+            this.expansions += 1;
+
+            int cell = this.stateCells[state];
+            int step = this.stateSteps[state];
+
+            if (cell == goal) {
+                found = state;
+                break;
+            }
+            if (step >= maxSteps) continue;
+
+            int time = startTime + step * this.travelTime;
+            int count = this.graph.getNeighbourCells(cell, this.neighbours);
+
+            // moves to a neighbour, followed by waiting in place
+            for (int i = 0; i <= count; i++) {
+                int next = i < count ? this.neighbours[i] : cell;
+                if (next != start && this.graph.isBlocked(next)) continue;
+                if (this.simulation.getNodeAt(next).isReserved(time, time + this.travelTime, agent)) continue;
+                // swapping places with an agent that comes the other way
+                if (next != cell && this.simulation.getNodeAt(cell).isEnteredFrom(next, time, time + this.travelTime, agent)) continue;
+
+                long key = (long) (step + 1) * this.graph.getHeight() * columns + next;
+                if (this.lookup(key) >= 0) continue;
+
+                int nextState = this.addState(next, step + 1, state);
+                this.store(key, nextState);
+                int h = this.heuristic(next, goalRow, goalCol);
+                if (h < closestH) {
+                    closest = nextState;
+                    closestH = h;
+                }
+                if (step + 1 + h <= maxSteps) {
+                    this.push(nextState, step + 1 + h);
+                }
+            }
+        }
+
+        if (found >= 0) {
+            this.appendPath(path, found);
+            return PathResult.Status.FOUND;
+        }
+        if (expansions >= maxExpansions) {
+            this.appendPath(path, closest);
+            return PathResult.Status.OVER_BUDGET;
+        }
+        return PathResult.Status.BLOCKED;
+    }
+
+    // appends the cells of the states from the start up to the given one
+    private void appendPath(Path path, int last) {
+        int offset = path.size();
+        path.grow(this.stateSteps[last] + 1);
+        for (int state = last; state >= 0; state = this.stateParents[state]) {
+            path.set(offset + this.stateSteps[state], this.stateCells[state]);
+        }
+    }
+
+    /**
+     * Returns the number of states expanded by all searches so far.
+     */
+    public long getExpansions() {
+        return this.expansions;
+    }
+
+    private int heuristic(int cell, int goalRow, int goalCol) {
+        int columns = this.graph.getWidth();
+        return Math.abs(cell / columns - goalRow) + Math.abs(cell % columns - goalCol);
+    }
+
+    private void push(int state, int f) {
+        this.stateNext[state] = this.bucketHeads[f];
+        this.bucketHeads[f] = state;
+    }
+
+    private int addState(int cell, int step, int parent) {
+        if (this.stateCount == this.stateCells.length) {
+            int capacity = 2 * this.stateCount;
+            this.stateCells = Arrays.copyOf(this.stateCells, capacity);
+            this.stateSteps = Arrays.copyOf(this.stateSteps, capacity);
+            this.stateParents = Arrays.copyOf(this.stateParents, capacity);
+            this.stateNext = Arrays.copyOf(this.stateNext, capacity);
+        }
+
+        int state = this.stateCount;
+        this.stateCells[state] = cell;
+        this.stateSteps[state] = step;
+        this.stateParents[state] = parent;
+        this.stateCount += 1;
+        return state;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (this.tableKeys.length - 1);
+    }
+
+    private int lookup(long key) {
+        int mask = this.tableKeys.length - 1;
+        for (int i = this.slot(key); this.tableStamps[i] == this.generation; i = (i + 1) & mask) {
+            if (this.tableKeys[i] == key) {
+                return this.tableValues[i];
+            }
+        }
+        return -1;
+    }
+
+    private void store(long key, int state) {
+        // every discovered state except the first one is stored, so the table stays at most half full
+        if (2 * this.stateCount > this.tableKeys.length) {
+            this.grow();
+        }
+
+        int mask = this.tableKeys.length - 1;
+        int i = this.slot(key);
+        while (this.tableStamps[i] == this.generation) {
+            i = (i + 1) & mask;
+        }
+        this.tableKeys[i] = key;
+        this.tableValues[i] = state;
+        this.tableStamps[i] = this.generation;
+    }
+
+    private void grow() {
+        long[] keys = this.tableKeys;
+        int[] values = this.tableValues;
+        int[] stamps = this.tableStamps;
+        int generation = this.generation;
+
+        this.tableKeys = new long[2 * keys.length];
+        this.tableValues = new int[2 * keys.length];
+        this.tableStamps = new int[2 * keys.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            if (stamps[i] == generation) {
+                this.store(keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the cartesian product of agent types, battery capacities, simple delivery counts and maps as independent
+ * simulations on a work-stealing pool, and prints one table with the results.
+ *
+ * Usage: java -cp out main.Sweep [--maps a.mpm,b.mpm] [--agents simple,naive,complex] [--batteries 100,200]
+ *        [--simple-counts 1,2] [--parcels 100] [--window 15000] [--charging 1] [--seed 1] [--mode tick|event]
+ *        [--dispatch local|central] [--budget n] [--threads n]
+ */
+public class Sweep {
+
+    private static class Scenario {
+        private String map;
+        private Settings settings;
+        private Simulation simulation;
+        private double seconds;
+
+        private Scenario(String map, Settings settings) {
+            this.map = map;
+            this.settings = settings;
+        }
+    }
+
+    public static void main(String[] args) {
+        String[] maps = {"warehouse.mpm"};
+        String[] agentTypes = {"simple", "naive", "complex"};
+        int[] batteries = {Main.batteryCapacity};
+        int[] simpleCounts = {Main.simpleDeliveryCount};
+        Settings base = new Settings();
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+
+                switch (option) {
+                    case "--maps":
+                        maps = value.split(",");
+                        break;
+                    case "--agents":
+                        agentTypes = value.split(",");
+                        for (String type : agentTypes) {
+                            Headless.parseAgentType(type);
+                        }
+                        break;
+                    case "--batteries":
+                        batteries = parseInts(value);
+                        break;
+                    case "--simple-counts":
+                        simpleCounts = parseInts(value);
+                        break;
+                    case "--parcels":
+                        base.parcelAmount = Integer.parseInt(value);
+                        break;
+                    case "--window":
+                        base.arrivalWindow = Integer.parseInt(value);
+                        break;
+                    case "--charging":
+                        base.chargingMultiplier = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        base.seed = Long.parseLong(value);
+                        break;
+                    case "--mode":
+                        base.eventDriven = Headless.parseMode(value);
+                        break;
+                    case "--dispatch":
+                        base.centralDispatch = Headless.parseDispatch(value);
+                        break;
+                    case "--budget":
+                        base.planningBudget = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: main.Sweep [--maps a.mpm,b.mpm] [--agents simple,naive,complex] [--batteries n,m]"
+                    + " [--simple-counts n,m] [--parcels n] [--window n] [--charging n] [--seed n] [--mode tick|event]"
+                    + " [--dispatch local|central] [--budget n] [--threads n]");
+            System.exit(1);
+            return;
+        }
+
+        List<String> contents = new ArrayList<>();
+        for (String map : maps) {
+            try {
+                contents.add(Headless.readMap(map));
+            } catch (IOException e) {
+                System.err.println("Could not read map " + map + ": " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+
+        // the simple delivery count only matters for simple agents
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String map : maps) {
+            for (String agentType : agentTypes) {
+                for (int battery : batteries) {
+                    int[] counts = agentType.equals("simple") ? simpleCounts : new int[] {base.simpleDeliveryCount};
+                    for (int count : counts) {
+                        Settings settings = base.copy();
+                        settings.agentType = agentType;
+                        settings.batteryCapacity = battery;
+                        settings.simpleDeliveryCount = count;
+                        scenarios.add(new Scenario(map, settings));
+                    }
+                }
+            }
+        }
+
+        List<Callable<Scenario>> tasks = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            String map = contents.get(indexOf(maps, scenario.map));
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                scenario.simulation = Headless.run(map, scenario.settings, -1);
+                scenario.seconds = (System.nanoTime() - start) / 1e9;
+                return scenario;
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Scenario> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Simulation failed: " + e.getCause());
+            System.exit(1);
+            return;
+        } finally {
+            pool.shutdown();
+        }
+
+        printTable(scenarios);
+    }
+
+    private static void printTable(List<Scenario> scenarios) {
+        String format = "%-20s %-8s %8s %6s %10s %8s %6s %12s %8s %8s %8s%n";
+        System.out.printf(format, "map", "agent", "battery", "count", "delivered", "on time", "late",
+                "avg lateness", "charged", "ticks", "seconds");
+
+        for (Scenario scenario : scenarios) {
+            Settings settings = scenario.settings;
+            Tracker tracker = scenario.simulation.getTracker();
+            System.out.printf(format, scenario.map, settings.agentType, settings.batteryCapacity,
+                    settings.agentType.equals("simple") ? "" + settings.simpleDeliveryCount : "-",
+                    tracker.getDelivered() + "/" + settings.parcelAmount, tracker.getOnTime(), tracker.getTooLate(),
+                    String.format("%.1f", tracker.getAverageLateness()), tracker.getTimesCharged(),
+                    scenario.simulation.getPassedTime(), String.format("%.2f", scenario.seconds));
+        }
+    }
+
+    private static int[] parseInts(String value) {
+        String[] parts = value.split(",");
+        int[] numbers = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            numbers[i] = Integer.parseInt(parts[i].trim());
+        }
+        return numbers;
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) return i;
+        }
+        return -1;
+    }
+}
@@ -1,21 +1,59 @@
 package main;
 
+/**
+ * Keeps the statistics of a single simulation.
+ */
 public class Tracker {
 
-    public static int totalTime = 0;
-    public static int count = 0;
+    private int totalTime = 0;
+    private int count = 0;
+    private int nbOnTime = 0;
+    private int nbTooLate = 0;
+    private int totalLateness = 0;
+    private int timesCharged = 0;
 
-    public static void init() {
-        totalTime = 0;
-        count = 0;
-    }
-
-    public static void addParcelDelivery(Parcel parcel, int time) {
+    public void addParcelDelivery(Parcel parcel, int time) {
         totalTime += time - parcel.getArrivalTime();
         count += 1;
+
+        int delta = time - parcel.getDeadline();
+        if (delta <= 0) {
+            nbOnTime += 1;
+        } else {
+            nbTooLate += 1;
+        }
+        totalLateness += delta;
+    }
+
+    public void addCharge() {
+        timesCharged += 1;
+    }
+
+    public int getAverageParcelTime() {
+        return count == 0 ? 0 : totalTime / count;
+    }
+
+    public int getDelivered() {
+        return count;
+    }
+
+    public int getOnTime() {
+        return nbOnTime;
+    }
+
+    public int getTooLate() {
+        return nbTooLate;
+    }
+
+    public int getTotalLateness() {
+        return totalLateness;
+    }
+
+    public double getAverageLateness() {
+        return count == 0 ? 0 : (double) totalLateness / count;
     }
 
-    public static int getAverageParcelTime() {
-        return totalTime / count;
+    public int getTimesCharged() {
+        return timesCharged;
     }
 }
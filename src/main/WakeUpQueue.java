@@ -0,0 +1,70 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of wake-up events, ordered by time and then by the registration order of the object to wake up.
+ * Both are packed into a single long so that the queue does not allocate per event.
+ */
+public class WakeUpQueue {
+
+    private long[] events = new long[64];
+    private int size = 0;
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public void add(int time, int order) {
+        if (this.size == this.events.length) {
+            this.events = Arrays.copyOf(this.events, 2 * this.size);
+        }
+
+        long event = ((long) time << 32) | order;
+        int i = this.size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (this.events[parent] <= event) break;
+            this.events[i] = this.events[parent];
+            i = parent;
+        }
+        this.events[i] = event;
+    }
+
+    public int peekTime() {
+        return (int) (this.events[0] >>> 32);
+    }
+
+    public int peekOrder() {
+        return (int) this.events[0];
+    }
+
+    /**
+     * Removes the first event; use peekTime and peekOrder to read it first.
+     */
+    public void remove() {
+        long last = this.events[--this.size];
+        int i = 0;
+        int half = this.size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < this.size && this.events[child + 1] < this.events[child]) {
+                child += 1;
+            }
+            if (last <= this.events[child]) break;
+            this.events[i] = this.events[child];
+            i = child;
+        }
+        if (this.size > 0) {
+            this.events[i] = last;
+        }
+    }
+}